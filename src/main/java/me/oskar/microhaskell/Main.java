@@ -4,7 +4,19 @@ import me.oskar.microhaskell.ast.ProgramNode;
 import me.oskar.microhaskell.error.Error;
 import me.oskar.microhaskell.error.CompileTimeError;
 import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.MemoTable;
+import me.oskar.microhaskell.evaluation.RuntimeStatistics;
+import me.oskar.microhaskell.evaluation.Sparks;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.ir.Compilation;
+import me.oskar.microhaskell.ir.IrFactory;
 import me.oskar.microhaskell.ir.IrGeneratorVisitor;
+import me.oskar.microhaskell.ir.IrSize;
+import me.oskar.microhaskell.ir.LetFloater;
+import me.oskar.microhaskell.ir.ScopeResolver;
+import me.oskar.microhaskell.ir.Simplifier;
+import me.oskar.microhaskell.ir.Speculator;
+import me.oskar.microhaskell.ir.StrictnessAnalyzer;
 import me.oskar.microhaskell.analysis.NameAnalyzerVisitor;
 import me.oskar.microhaskell.analysis.RecursionAnalyzerVisitor;
 import me.oskar.microhaskell.analysis.SemanticAnalyzerVisitor;
@@ -13,17 +25,25 @@ import me.oskar.microhaskell.parser.ExpressionRewriterVisitor;
 import me.oskar.microhaskell.parser.Parser;
 import me.oskar.microhaskell.prelude.Prelude;
 import me.oskar.microhaskell.repl.Repl;
+import me.oskar.microhaskell.server.Client;
+import me.oskar.microhaskell.server.Server;
 import me.oskar.microhaskell.table.SymbolTable;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class Main {
 
+    public static final int DEFAULT_OPTIMIZATION_LEVEL = 1;
+
     public static ProgramNode process(SymbolTable symbolTable, Error error, Lexer lexer) {
-        var ast = new Parser(lexer, error).parse();
+        return analyze(symbolTable, error, new Parser(lexer, error).parse());
+    }
 
+    public static ProgramNode analyze(SymbolTable symbolTable, Error error, ProgramNode ast) {
         var nameAnalyzer = new NameAnalyzerVisitor(symbolTable, error);
         ast.accept(nameAnalyzer);
 
@@ -39,14 +59,99 @@ public class Main {
         return ast;
     }
 
+    public static Compilation compile(ProgramNode program, SymbolTable symbolTable, Map<String, Expression> globals,
+                                      Error error) {
+        return compile(program, symbolTable, globals, IrGeneratorVisitor.DEFAULT_INLINE_BUDGET,
+                DEFAULT_OPTIMIZATION_LEVEL, error);
+    }
+
+    public static Compilation compile(ProgramNode program, SymbolTable symbolTable, Map<String, Expression> globals,
+                                      int inlineBudget, int optimizationLevel, Error error) {
+        return compile(program, symbolTable, globals, inlineBudget, optimizationLevel, 0, error);
+    }
+
+    /**
+     * @param speculationThreshold the estimated cost both operands of an arithmetic operation or comparison must have
+     *                             to be evaluated in parallel, or 0 to always evaluate them one after the other
+     */
+    public static Compilation compile(ProgramNode program, SymbolTable symbolTable, Map<String, Expression> globals,
+                                      int inlineBudget, int optimizationLevel, int speculationThreshold,
+                                      Error error) {
+        var irFactory = new IrFactory();
+        var irGenerator = new IrGeneratorVisitor(symbolTable, inlineBudget, irFactory, error);
+        var ir = program.accept(irGenerator);
+
+        var simplifier = new Simplifier(globals, optimizationLevel);
+        ir = simplifier.simplify(ir);
+
+        var letFloater = new LetFloater(globals, irFactory);
+        if (optimizationLevel >= 1) {
+            ir = letFloater.transform(ir);
+        }
+
+        ir = new ScopeResolver(globals).resolve(ir);
+
+        var strictnessAnalyzer = new StrictnessAnalyzer();
+        ir = strictnessAnalyzer.analyze(ir);
+
+        var speculator = new Speculator(speculationThreshold);
+        if (speculationThreshold > 0) {
+            ir = speculator.speculate(ir);
+        }
+
+        var statistics = new LinkedHashMap<String, Long>();
+        statistics.put("ir size", (long) IrSize.of(ir));
+        statistics.put("inlined references", (long) irGenerator.getInlinedReferences());
+        statistics.put("shared functions", (long) irGenerator.getSharedFunctions());
+        statistics.put("created ir nodes", (long) irFactory.getCreatedNodes());
+        statistics.put("reused ir nodes", (long) irFactory.getReusedNodes());
+        statistics.put("saved ir bytes", irFactory.getSavedBytes());
+        statistics.put("simplifier rounds", (long) simplifier.getRounds());
+        statistics.put("beta reductions", (long) simplifier.getBetaReductions());
+        statistics.put("dead bindings", (long) simplifier.getDeadBindings());
+        statistics.put("folded constants", (long) simplifier.getFoldedConstants());
+        statistics.put("eta reductions", (long) simplifier.getEtaReductions());
+        statistics.put("floated expressions", (long) letFloater.getFloatedExpressions());
+        statistics.put("shared expressions", (long) letFloater.getSharedExpressions());
+        statistics.put("strict arguments", (long) strictnessAnalyzer.getStrictArguments());
+        statistics.put("speculative operations", (long) speculator.getSpeculativeOperations());
+
+        return new Compilation(ir, statistics);
+    }
+
     public static void main(String[] args) {
-        if (args.length == 0) {
-            var repl = new Repl();
+        Options options = null;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.usage());
+            System.exit(1);
+        }
+
+        Sparks.setCores(options.getCores());
+        MemoTable.configure(options.getMemoPolicy(), options.getMemoCapacity());
+
+        if (options.getServerAddress() != null) {
+            try {
+                var server = new Server(options);
+                server.warmUp();
+                server.serve(options.getServerAddress());
+            } catch (IOException e) {
+                System.err.printf("Error serving on %s: %s%n", options.getServerAddress(), e.getMessage());
+                System.exit(1);
+            }
+
+            return;
+        }
+
+        if (options.getArguments().isEmpty()) {
+            var repl = new Repl(options);
             repl.start();
             return;
         }
 
-        var filename = args[0];
+        var filename = options.getArguments().getFirst();
         var code = "";
         try {
             code = Files.readString(Path.of(filename));
@@ -55,8 +160,18 @@ public class Main {
             System.exit(1);
         }
 
+        if (options.getConnectAddress() != null) {
+            try {
+                System.exit(Client.send(options.getConnectAddress(), filename, code));
+            } catch (IOException e) {
+                System.err.printf("Error connecting to %s: %s%n", options.getConnectAddress(), e.getMessage());
+                System.exit(1);
+            }
+        }
+
+        var evaluator = options.createEvaluator();
         var globalSymbolTable = new SymbolTable();
-        var env = Builtins.initialEnv(globalSymbolTable);
+        var globals = Builtins.initialEnv(globalSymbolTable, options.isNativeLists());
         var error = new Error(code, filename);
 
         var lexer = new Lexer(code);
@@ -64,11 +179,27 @@ public class Main {
         try {
             var ast = Prelude.readPrelude(globalSymbolTable).merge(process(globalSymbolTable, error, lexer));
 
-            var irGenerator = new IrGeneratorVisitor(globalSymbolTable, error);
-            var ir = ast.accept(irGenerator);
+            var compilation = compile(ast, globalSymbolTable, globals, options.getInlineBudget(),
+                    options.getOptimizationLevel(), options.getSpeculationThreshold(), error);
+            var ir = evaluator.prepare(compilation.program());
 
             System.out.println(ir);
-            System.out.println(ir.evaluate(env));
+
+            var result = options.getBudget().evaluate(evaluator, ir);
+            if (result.isExhausted()) {
+                System.err.printf("Error: out of %s after %s%n", result.exhausted().name().toLowerCase(),
+                        result.describeUsage());
+                System.exit(1);
+            }
+
+            System.out.println(result.value());
+
+            if (options.isPrintStatistics()) {
+                compilation.statistics().forEach((name, value) -> System.err.printf("%s: %d%n", name, value));
+                evaluator.getStatistics().forEach((name, value) -> System.err.printf("%s: %d%n", name, value));
+                RuntimeStatistics.ofProcess().getStatistics()
+                        .forEach((name, value) -> System.err.printf("%s: %d%n", name, value));
+            }
         } catch (CompileTimeError e) {
             e.printError();
             System.exit(1);
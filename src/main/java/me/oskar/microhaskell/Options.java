@@ -0,0 +1,225 @@
+package me.oskar.microhaskell;
+
+import me.oskar.microhaskell.evaluation.AbstractMachine;
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Evaluator;
+import me.oskar.microhaskell.evaluation.MemoTable;
+import me.oskar.microhaskell.evaluation.RecursiveEvaluator;
+import me.oskar.microhaskell.evaluation.graph.GraphReducer;
+import me.oskar.microhaskell.evaluation.jit.TieredEvaluator;
+import me.oskar.microhaskell.ir.IrGeneratorVisitor;
+import me.oskar.microhaskell.ir.Speculator;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Options {
+
+    public enum EvaluatorKind {
+        RECURSIVE, MACHINE, TIERED, GRAPH
+    }
+
+    private final List<String> arguments = new ArrayList<>();
+    private EvaluatorKind evaluatorKind = EvaluatorKind.RECURSIVE;
+    private int jitThreshold = 100;
+    private boolean printStatistics = false;
+    private boolean nativeLists = true;
+    private int inlineBudget = IrGeneratorVisitor.DEFAULT_INLINE_BUDGET;
+    private int optimizationLevel = Main.DEFAULT_OPTIMIZATION_LEVEL;
+    private int cores = Runtime.getRuntime().availableProcessors();
+    private int speculationThreshold = 0;
+    private MemoTable.Policy memoPolicy = MemoTable.Policy.LRU;
+    private int memoCapacity = MemoTable.DEFAULT_CAPACITY;
+    private long maxReductions = 0;
+    private long timeoutMillis = 0;
+    private long maxAllocatedBytes = 0;
+    private SocketAddress serverAddress = null;
+    private SocketAddress connectAddress = null;
+
+    public static Options parse(String[] args) {
+        var options = new Options();
+
+        for (var arg : args) {
+            if (arg.matches("-O[0-2]")) {
+                options.optimizationLevel = arg.charAt(2) - '0';
+                continue;
+            }
+
+            if (!arg.startsWith("--")) {
+                options.arguments.add(arg);
+                continue;
+            }
+
+            var parts = arg.substring(2).split("=", 2);
+            var value = parts.length > 1 ? parts[1] : "";
+
+            switch (parts[0]) {
+                case "evaluator" -> options.evaluatorKind = parseEnum(EvaluatorKind.class, arg, value);
+                case "jit-threshold" -> options.jitThreshold = parseInt(arg, value);
+                case "stats" -> options.printStatistics = true;
+                case "prelude-lists" -> options.nativeLists = false;
+                case "inline-budget" -> options.inlineBudget = parseInt(arg, value);
+                case "cores" -> options.cores = parsePositiveInt(arg, value);
+                case "speculate" -> options.speculationThreshold = value.isEmpty()
+                        ? Speculator.DEFAULT_THRESHOLD
+                        : parsePositiveInt(arg, value);
+                case "memo" -> options.memoPolicy = parseEnum(MemoTable.Policy.class, arg, value);
+                case "memo-size" -> options.memoCapacity = parsePositiveInt(arg, value);
+                case "max-reductions" -> options.maxReductions = parsePositiveLong(arg, value);
+                case "timeout" -> options.timeoutMillis = parsePositiveLong(arg, value);
+                case "max-allocation" -> options.maxAllocatedBytes = parsePositiveLong(arg, value) * 1024 * 1024;
+                case "server" -> options.serverAddress = parseAddress(arg, value);
+                case "connect" -> options.connectAddress = parseAddress(arg, value);
+                default -> throw new IllegalArgumentException("Unknown option: %s".formatted(arg));
+            }
+        }
+
+        return options;
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String arg, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+        }
+    }
+
+    private static int parseInt(String arg, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+        }
+    }
+
+    private static int parsePositiveInt(String arg, String value) {
+        var n = parseInt(arg, value);
+        if (n < 1) throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+
+        return n;
+    }
+
+    private static long parsePositiveLong(String arg, String value) {
+        long n;
+        try {
+            n = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+        }
+
+        if (n < 1) throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+
+        return n;
+    }
+
+    /**
+     * A port on the loopback interface or the path of a Unix domain socket.
+     */
+    private static SocketAddress parseAddress(String arg, String value) {
+        if (value.isEmpty()) throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+
+        if (value.chars().allMatch(Character::isDigit)) {
+            var port = parseInt(arg, value);
+            if (port > 65535) throw new IllegalArgumentException("Invalid value for option: %s".formatted(arg));
+
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        }
+
+        return UnixDomainSocketAddress.of(value);
+    }
+
+    public static String usage() {
+        return """
+                Usage: microhaskell [options] [file]
+                Options:
+                  --evaluator=recursive|machine|tiered|graph   Selects the evaluation strategy (default: recursive)
+                  --jit-threshold=<n>                          Invocations before the tiered evaluator compiles a lambda (default: 100)
+                  --stats                                      Prints the counters collected by the compiler and the evaluator
+                  --prelude-lists                              Uses the definitions of the list functions in the prelude instead of native builtins
+                  -O0|-O1|-O2                                  Disables the simplification of the IR, simplifies it, or also substitutes small lambdas at every use (default: -O1)
+                  --inline-budget=<n>                          Largest IR size of a function that is copied into its use sites (default: %d)
+                  --cores=<n>                                  Number of cores that evaluate the program and the sparks created by `par` (default: %d)
+                  --speculate[=<cost>]                         Evaluates both operands of arithmetic and comparisons in parallel if both have an estimated cost of at least <cost> (default: %d), unless --cores=1
+                  --memo=lru|soft                              Keeps the most recently used results of functions wrapped in `memo`, or all of them until memory runs low (default: lru)
+                  --memo-size=<n>                              Number of results kept per function by --memo=lru (default: %d)
+                  --max-reductions=<n>                         Stops the evaluation after n reductions
+                  --timeout=<ms>                               Stops the evaluation after the given time
+                  --max-allocation=<mb>                        Stops the evaluation after it allocated the given number of megabytes
+                  --server=<port|path>                         Keeps the prelude loaded and evaluates the programs sent to a loopback port or Unix domain socket
+                  --connect=<port|path>                        Evaluates the file on a server started with --server"""
+                .formatted(IrGeneratorVisitor.DEFAULT_INLINE_BUDGET, Runtime.getRuntime().availableProcessors(),
+                        Speculator.DEFAULT_THRESHOLD, MemoTable.DEFAULT_CAPACITY);
+    }
+
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    public boolean isPrintStatistics() {
+        return printStatistics;
+    }
+
+    public boolean isNativeLists() {
+        return nativeLists;
+    }
+
+    public int getInlineBudget() {
+        return inlineBudget;
+    }
+
+    public int getOptimizationLevel() {
+        return optimizationLevel;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    /**
+     * The estimated cost of the operands from which on operations are evaluated speculatively, or 0 if they never
+     * are. A single core never evaluates sparks, so the operations are not rewritten then.
+     */
+    public int getSpeculationThreshold() {
+        return cores == 1 ? 0 : speculationThreshold;
+    }
+
+    public MemoTable.Policy getMemoPolicy() {
+        return memoPolicy;
+    }
+
+    public int getMemoCapacity() {
+        return memoCapacity;
+    }
+
+    public Budget getBudget() {
+        return new Budget(maxReductions, timeoutMillis, maxAllocatedBytes);
+    }
+
+    /**
+     * The address to serve programs on, or {@code null} if this is not a server.
+     */
+    public SocketAddress getServerAddress() {
+        return serverAddress;
+    }
+
+    /**
+     * The address of the server that evaluates the file, or {@code null} if it is evaluated by this process.
+     */
+    public SocketAddress getConnectAddress() {
+        return connectAddress;
+    }
+
+    public Evaluator createEvaluator() {
+        return switch (evaluatorKind) {
+            case RECURSIVE -> new RecursiveEvaluator();
+            case MACHINE -> new AbstractMachine();
+            case TIERED -> new TieredEvaluator(jitThreshold);
+            case GRAPH -> new GraphReducer();
+        };
+    }
+}
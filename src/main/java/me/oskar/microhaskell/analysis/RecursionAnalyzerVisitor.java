@@ -148,17 +148,28 @@ public class RecursionAnalyzerVisitor extends BaseVisitor<Void> {
         }
 
         for (var scc : sccs) {
+            var groups = new HashMap<SymbolTable, List<FunctionEntry>>();
+
             for (var fn : scc) {
                 var entry = symbolTable.lookupFunctionByDispatchId(fn);
                 if (entry != null) {
                     if (scc.size() > 1) {
                         entry.setAppliedMutuallyRecursively(true);
+                        groups.computeIfAbsent(entry.getLocalTable().getParent(), t -> new ArrayList<>()).add(entry);
                     }
                     if (applicationGraph.getOrDefault(fn, Set.of()).contains(fn)) {
                         entry.setAppliedSelfRecursively(true);
                     }
                 }
             }
+
+            // Members are grouped by the scope they are defined in, so a group can always be bound as a whole
+            for (var group : groups.values()) {
+                group.sort(Comparator.comparingInt(FunctionEntry::getDispatchId));
+                for (var entry : group) {
+                    entry.setRecursionGroup(List.copyOf(group));
+                }
+            }
         }
     }
 
@@ -3,17 +3,19 @@ package me.oskar.microhaskell.ast;
 import me.oskar.microhaskell.ast.visitor.Visitor;
 import me.oskar.microhaskell.position.Span;
 
+import java.math.BigInteger;
+
 public class IntLiteralNode extends AtomicExpressionNode {
 
-    private final int value;
+    private final BigInteger value;
 
-    public IntLiteralNode(Span span, int value) {
+    public IntLiteralNode(Span span, BigInteger value) {
         super(span);
 
         this.value = value;
     }
 
-    public int getValue() {
+    public BigInteger getValue() {
         return value;
     }
 
@@ -0,0 +1,121 @@
+package me.oskar.microhaskell.benchmark;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.error.CompileTimeError;
+import me.oskar.microhaskell.error.Error;
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.Evaluator;
+import me.oskar.microhaskell.evaluation.MemoTable;
+import me.oskar.microhaskell.evaluation.Sparks;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.lexer.Lexer;
+import me.oskar.microhaskell.prelude.Prelude;
+import me.oskar.microhaskell.table.SymbolTable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class Benchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    public static void main(String[] args) {
+        Options options = null;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        var arguments = options.getArguments();
+        if (arguments.isEmpty()) {
+            System.err.println("Usage: Benchmark [options] <file> [iterations]");
+            System.exit(1);
+        }
+
+        var filename = arguments.getFirst();
+        var iterations = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : 20;
+        var evaluator = options.createEvaluator();
+        Sparks.setCores(options.getCores());
+        MemoTable.configure(options.getMemoPolicy(), options.getMemoCapacity());
+
+        var ir = load(options, evaluator, filename);
+
+        var budget = options.getBudget();
+        var result = warmUp(budget, evaluator, ir);
+        var times = new long[iterations];
+        for (var i = 0; i < iterations; i++) {
+            var start = System.nanoTime();
+            result = evaluate(budget, evaluator, ir);
+            times[i] = System.nanoTime() - start;
+        }
+
+        printResult(filename, result, times);
+    }
+
+    /**
+     * Compiles the program in the file and prepares it for the evaluator, or exits if that fails.
+     */
+    static Expression load(Options options, Evaluator evaluator, String filename) {
+        var code = "";
+        try {
+            code = Files.readString(Path.of(filename));
+        } catch (IOException e) {
+            System.err.printf("Error reading file: %s%n", filename);
+            System.exit(1);
+        }
+
+        var symbolTable = new SymbolTable();
+        var globals = Builtins.initialEnv(symbolTable, options.isNativeLists());
+        var error = new Error(code, filename);
+
+        try {
+            var ast = Prelude.readPrelude(symbolTable).merge(Main.process(symbolTable, error, new Lexer(code)));
+            return evaluator.prepare(Main.compile(ast, symbolTable, globals, options.getInlineBudget(),
+                    options.getOptimizationLevel(), options.getSpeculationThreshold(), error).program());
+        } catch (CompileTimeError e) {
+            e.printError();
+            System.exit(1);
+            return null;
+        }
+    }
+
+    static Expression warmUp(Budget budget, Evaluator evaluator, Expression ir) {
+        Expression result = null;
+        for (var i = 0; i < WARMUP_ITERATIONS; i++) {
+            result = evaluate(budget, evaluator, ir);
+        }
+
+        return result;
+    }
+
+    /**
+     * Evaluates the program within the budget, or exits if it runs out of it.
+     */
+    static Expression evaluate(Budget budget, Evaluator evaluator, Expression ir) {
+        var result = budget.evaluate(evaluator, ir);
+        if (result.isExhausted()) {
+            System.err.printf("Out of %s after %s%n", result.exhausted().name().toLowerCase(), result.describeUsage());
+            System.exit(1);
+        }
+
+        return result.value();
+    }
+
+    private static void printResult(String filename, Object result, long[] times) {
+        var total = 0L;
+        var min = Long.MAX_VALUE;
+        for (var t : times) {
+            total += t;
+            min = Math.min(min, t);
+        }
+
+        System.out.printf("%s = %s%n", filename, result);
+        System.out.printf("  iterations: %d, mean: %.3f ms, min: %.3f ms%n",
+                times.length, total / (double) times.length / 1e6, min / 1e6);
+    }
+}
@@ -0,0 +1,67 @@
+package me.oskar.microhaskell.benchmark;
+
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.evaluation.RuntimeStatistics;
+import me.oskar.microhaskell.evaluation.Sparks;
+
+import java.util.ArrayList;
+
+/**
+ * Runs a program with 1, 2, 4, ... cores up to {@code --cores} and prints the speedup of each over a single core,
+ * e.g. {@code ScalingBenchmark --cores=32 examples/parallel_fibonacci.mhs} for explicit sparks or
+ * {@code ScalingBenchmark --cores=32 --speculate examples/fibonacci.mhs} for speculative operations.
+ */
+public class ScalingBenchmark {
+
+    public static void main(String[] args) {
+        Options options = null;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+
+        var arguments = options.getArguments();
+        if (arguments.isEmpty()) {
+            System.err.println("Usage: ScalingBenchmark [options] <file> [iterations]");
+            System.exit(1);
+        }
+
+        var filename = arguments.getFirst();
+        var iterations = arguments.size() > 1 ? Integer.parseInt(arguments.get(1)) : 5;
+        var evaluator = options.createEvaluator();
+        var ir = Benchmark.load(options, evaluator, filename);
+        var budget = options.getBudget();
+
+        var coreCounts = new ArrayList<Integer>();
+        for (var cores = 1; cores < options.getCores(); cores *= 2) {
+            coreCounts.add(cores);
+        }
+        coreCounts.add(options.getCores());
+
+        System.out.printf("%s%n%6s %12s %10s %8s %10s %10s%n", filename, "cores", "min ms", "runs/s", "speedup",
+                "converted", "fizzled");
+
+        var baseline = 0L;
+        for (var cores : coreCounts) {
+            Sparks.setCores(cores);
+            Benchmark.warmUp(budget, evaluator, ir);
+            RuntimeStatistics.ofProcess().reset();
+
+            var min = Long.MAX_VALUE;
+            for (var i = 0; i < iterations; i++) {
+                var start = System.nanoTime();
+                Benchmark.evaluate(budget, evaluator, ir);
+                min = Math.min(min, System.nanoTime() - start);
+            }
+
+            if (baseline == 0) baseline = min;
+
+            var sparks = RuntimeStatistics.ofProcess().getStatistics();
+            System.out.printf("%6d %12.3f %10.2f %7.2fx %10d %10d%n", cores, min / 1e6, 1e9 / min,
+                    baseline / (double) min, sparks.get("sparks converted") / iterations,
+                    sparks.get("sparks fizzled") / iterations);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.position.Span;
 
+import java.io.PrintStream;
 import java.util.List;
 
 public abstract class CompileTimeError extends RuntimeException {
@@ -29,23 +30,23 @@ public abstract class CompileTimeError extends RuntimeException {
         return String.format("%" + n + "s", s);
     }
 
-    protected void printUnderline(int offset, int length, String underlineMessage) {
+    protected void printUnderline(PrintStream out, int offset, int length, String underlineMessage) {
         var s = ANSI_RED + "      " + " ".repeat(offset) + "^".repeat(length) + " " + underlineMessage + ANSI_RESET;
 
-        System.out.println(s);
+        out.println(s);
     }
 
-    protected void printErrorLine(int startOffset, int endOffset, String lineCount, String codeLine) {
+    protected void printErrorLine(PrintStream out, int startOffset, int endOffset, String lineCount, String codeLine) {
         var startPart = codeLine.substring(0, startOffset);
         var errorPart = codeLine.substring(startOffset, endOffset);
         var endPart = codeLine.substring(endOffset);
 
         var s = startPart + ANSI_RED + errorPart + ANSI_RESET + endPart;
 
-        System.out.printf("   %s | %s%n", lineCount, s);
+        out.printf("   %s | %s%n", lineCount, s);
     }
 
-    protected void printCode(Span span, String underlineMessage) {
+    protected void printCode(PrintStream out, Span span, String underlineMessage) {
         var codePreviewStart = Math.max(span.start().line() - 2, 1);
         var codePreviewEnd = Math.min(span.end().line() + 3, code.size());
 
@@ -60,42 +61,46 @@ public abstract class CompileTimeError extends RuntimeException {
                     if (i == span.start().line()) {
                         var startOffset = span.start().lineOffset();
                         var endOffset = codeLine.length();
-                        printErrorLine(startOffset, endOffset, lineCount, codeLine);
+                        printErrorLine(out, startOffset, endOffset, lineCount, codeLine);
                     } else if (i == span.end().line()) {
                         var startOffset = 0;
                         var endOffset = span.end().lineOffset();
-                        printErrorLine(startOffset, endOffset, lineCount, codeLine);
+                        printErrorLine(out, startOffset, endOffset, lineCount, codeLine);
                     } else {
-                        printErrorLine(0, codeLine.length(), lineCount, codeLine);
+                        printErrorLine(out, 0, codeLine.length(), lineCount, codeLine);
                     }
                 } else {
-                    printErrorLine(span.start().lineOffset(), span.end().lineOffset(), lineCount, codeLine);
+                    printErrorLine(out, span.start().lineOffset(), span.end().lineOffset(), lineCount, codeLine);
                 }
             } else {
-                System.out.printf("   %s | %s%n", lineCount, codeLine);
+                out.printf("   %s | %s%n", lineCount, codeLine);
             }
 
             if (span.isMultiline()) {
                 if (i == span.start().line()) {
                     var offset = lineCountWidth + span.start().lineOffset();
-                    printUnderline(offset, codeLine.length() - span.start().lineOffset(), "");
+                    printUnderline(out, offset, codeLine.length() - span.start().lineOffset(), "");
                 } else if (i == span.end().line()) {
-                    printUnderline(lineCountWidth, span.end().lineOffset(), underlineMessage);
+                    printUnderline(out, lineCountWidth, span.end().lineOffset(), underlineMessage);
                 } else if (span.includesLine(i)) {
-                    printUnderline(lineCountWidth, codeLine.length(), "");
+                    printUnderline(out, lineCountWidth, codeLine.length(), "");
                 }
             } else if (i == span.start().line()) {
                 var offset = lineCountWidth + span.start().lineOffset();
                 var length = span.end().lineOffset() - span.start().lineOffset();
-                printUnderline(offset, length, underlineMessage);
+                printUnderline(out, offset, length, underlineMessage);
             }
         }
     }
 
-    protected void printErrorHead(Span span, String message) {
-        System.out.printf("%s%s:%s%s %serror:%s %s%n", ANSI_BOLD, filename, span.start().line(), ANSI_RESET, ANSI_RED,
+    protected void printErrorHead(PrintStream out, Span span, String message) {
+        out.printf("%s%s:%s%s %serror:%s %s%n", ANSI_BOLD, filename, span.start().line(), ANSI_RESET, ANSI_RED,
                 ANSI_RESET, message);
     }
 
-    public abstract void printError();
+    public void printError() {
+        printError(System.out);
+    }
+
+    public abstract void printError(PrintStream out);
 }
@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.ast.FixityNode;
 
+import java.io.PrintStream;
+
 public class DuplicatedFixityDeclarationError extends CompileTimeError {
 
     private final FixityNode fixityNode;
@@ -13,9 +15,9 @@ public class DuplicatedFixityDeclarationError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(fixityNode.getSpan(), "duplicated fixity declaration");
-        printCode(fixityNode.getSpan(),
+    public void printError(PrintStream out) {
+        printErrorHead(out, fixityNode.getSpan(), "duplicated fixity declaration");
+        printCode(out, fixityNode.getSpan(),
                 "fixity for operator `%s` has already been declared".formatted(fixityNode.getOperatorName()));
     }
 }
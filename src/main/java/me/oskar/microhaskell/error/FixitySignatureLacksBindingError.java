@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.ast.FixityNode;
 
+import java.io.PrintStream;
+
 public class FixitySignatureLacksBindingError extends CompileTimeError {
 
     private final FixityNode fixityNode;
@@ -13,8 +15,8 @@ public class FixitySignatureLacksBindingError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(fixityNode.getSpan(), "fixity signature lacks an accompanying binding");
-        printCode(fixityNode.getSpan(), "`%s` is not bound`".formatted(fixityNode.getOperatorName()));
+    public void printError(PrintStream out) {
+        printErrorHead(out, fixityNode.getSpan(), "fixity signature lacks an accompanying binding");
+        printCode(out, fixityNode.getSpan(), "`%s` is not bound`".formatted(fixityNode.getOperatorName()));
     }
 }
@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.lexer.Token;
 
+import java.io.PrintStream;
+
 public class InvalidFunctionNodeError extends CompileTimeError {
 
     private final Token token;
@@ -13,8 +15,8 @@ public class InvalidFunctionNodeError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(token.span(), "invalid function name");
-        printCode(token.span(), "expected identifier or operator in parenthesis");
+    public void printError(PrintStream out) {
+        printErrorHead(out, token.span(), "invalid function name");
+        printCode(out, token.span(), "expected identifier or operator in parenthesis");
     }
 }
@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.lexer.Token;
 
+import java.io.PrintStream;
+
 public class InvalidOperatorPrecedenceError extends CompileTimeError {
 
     private final Token token;
@@ -13,8 +15,8 @@ public class InvalidOperatorPrecedenceError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(token.span(), "invalid operator precedence");
-        printCode(token.span(), "has to be an integer between 0 and 9");
+    public void printError(PrintStream out) {
+        printErrorHead(out, token.span(), "invalid operator precedence");
+        printCode(out, token.span(), "has to be an integer between 0 and 9");
     }
 }
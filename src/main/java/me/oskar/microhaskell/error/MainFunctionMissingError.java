@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.position.Span;
 
+import java.io.PrintStream;
+
 public class MainFunctionMissingError extends CompileTimeError {
 
     protected MainFunctionMissingError(String code, String filename) {
@@ -9,7 +11,7 @@ public class MainFunctionMissingError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(Span.BASE_SPAN, "main function missing");
+    public void printError(PrintStream out) {
+        printErrorHead(out, Span.BASE_SPAN, "main function missing");
     }
 }
@@ -3,6 +3,8 @@ package me.oskar.microhaskell.error;
 import me.oskar.microhaskell.ast.FunctionDefinitionNode;
 import me.oskar.microhaskell.ast.IdentifierNode;
 
+import java.io.PrintStream;
+
 public class RedefinitionAsFunctionError extends CompileTimeError {
 
     private final FunctionDefinitionNode functionDefinitionNode;
@@ -14,8 +16,8 @@ public class RedefinitionAsFunctionError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(functionDefinitionNode.getSpan(), "redefinition of symbol as function");
-        printCode(functionDefinitionNode.getSpan(), "is already defined on this scope");
+    public void printError(PrintStream out) {
+        printErrorHead(out, functionDefinitionNode.getSpan(), "redefinition of symbol as function");
+        printCode(out, functionDefinitionNode.getSpan(), "is already defined on this scope");
     }
 }
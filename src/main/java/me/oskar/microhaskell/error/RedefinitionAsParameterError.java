@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.ast.AtomicExpressionNode;
 
+import java.io.PrintStream;
+
 public class RedefinitionAsParameterError extends CompileTimeError {
 
     private final AtomicExpressionNode atomicExpressionNode;
@@ -13,8 +15,8 @@ public class RedefinitionAsParameterError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(atomicExpressionNode.getSpan(), "redefinition of symbol as parameter");
-        printCode(atomicExpressionNode.getSpan(), "is already defined on this scope");
+    public void printError(PrintStream out) {
+        printErrorHead(out, atomicExpressionNode.getSpan(), "redefinition of symbol as parameter");
+        printCode(out, atomicExpressionNode.getSpan(), "is already defined on this scope");
     }
 }
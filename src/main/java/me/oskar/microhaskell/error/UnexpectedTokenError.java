@@ -3,6 +3,8 @@ package me.oskar.microhaskell.error;
 import me.oskar.microhaskell.lexer.Token;
 import me.oskar.microhaskell.lexer.TokenType;
 
+import java.io.PrintStream;
+
 public class UnexpectedTokenError extends CompileTimeError {
 
     private final Token token;
@@ -16,12 +18,12 @@ public class UnexpectedTokenError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
+    public void printError(PrintStream out) {
         if (token.type() == TokenType.EOF) {
-            printErrorHead(token.span(), "unexpected end of file");
+            printErrorHead(out, token.span(), "unexpected end of file");
         } else {
-            printErrorHead(token.span(), "unexpected token");
-            printCode(token.span(), String.format("found `%s`, expected %s", token.type().tokenName, expected));
+            printErrorHead(out, token.span(), "unexpected token");
+            printCode(out, token.span(), String.format("found `%s`, expected %s", token.type().tokenName, expected));
         }
     }
 }
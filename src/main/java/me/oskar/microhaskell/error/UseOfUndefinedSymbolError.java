@@ -2,6 +2,8 @@ package me.oskar.microhaskell.error;
 
 import me.oskar.microhaskell.ast.IdentifierNode;
 
+import java.io.PrintStream;
+
 public class UseOfUndefinedSymbolError extends CompileTimeError {
 
     private final IdentifierNode identifierNode;
@@ -13,8 +15,8 @@ public class UseOfUndefinedSymbolError extends CompileTimeError {
     }
 
     @Override
-    public void printError() {
-        printErrorHead(identifierNode.getSpan(), "use of undefined symbol");
-        printCode(identifierNode.getSpan(), "is undefined");
+    public void printError(PrintStream out) {
+        printErrorHead(out, identifierNode.getSpan(), "use of undefined symbol");
+        printCode(out, identifierNode.getSpan(), "is undefined");
     }
 }
@@ -0,0 +1,250 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CEK-style machine that evaluates the IR iteratively. Pending work is kept on a heap-allocated continuation stack
+ * instead of the Java call stack, so the recursion depth of a program is only bounded by the available memory.
+ */
+public class AbstractMachine implements Evaluator {
+
+    private sealed interface Continuation {
+    }
+
+    private record ApplyTo(Expression argument) implements Continuation {
+    }
+
+    private record EvaluateArgument(Call call, Expression[] arguments, Environment env, int index)
+            implements Continuation {
+    }
+
+    private record ApplyAll(Call call, Expression[] arguments) implements Continuation {
+    }
+
+    /**
+     * Sets the value of a thunk once it is evaluated. The expression and environment the thunk was entered with are
+     * kept to restore it if the evaluation fails.
+     */
+    private record Update(Thunk thunk, Expression expression, Environment env) implements Continuation {
+    }
+
+    private record ForceArgument(BuiltinFunction function, List<Expression> arguments, int index)
+            implements Continuation {
+    }
+
+    private static class Execution {
+
+        private final Deque<Continuation> stack = new ArrayDeque<>();
+        private Expression control;
+        private Environment env = Environment.EMPTY;
+        private Expression value = null;
+        private long reductions = 0;
+        private long builtinReductions = 0;
+        private long updates = 0;
+        private long eagerArguments = 0;
+
+        private Execution(Expression program) {
+            this.control = program;
+        }
+
+        private Expression run() {
+            try {
+                while (true) {
+                    if (value == null) {
+                        step();
+                    } else if (stack.isEmpty()) {
+                        return value;
+                    } else {
+                        resume(stack.pop());
+                    }
+                }
+            } catch (RuntimeException | StackOverflowError e) {
+                // Other threads may be waiting for the thunks under evaluation, e.g. to evaluate a spark
+                for (var continuation : stack) {
+                    if (continuation instanceof Update(Thunk thunk, Expression expression, Environment thunkEnv)) {
+                        thunk.abandon(expression, thunkEnv);
+                    }
+                }
+
+                throw e;
+            }
+        }
+
+        private void step() {
+            switch (control) {
+                case LocalVariable(String ignored, int slot) -> control = env.lookup(slot);
+                case GlobalVariable(String ignored, Expression global) -> control = global;
+                case RecursiveBinding binding -> control = binding.bind(env);
+                case RecursiveGroup group -> control = group.bind(env);
+                // Tail calls do not grow the stack of the machine, so a loop runs as ordinary calls
+                case Loop(Expression body) -> control = body;
+                case SelfTailCall tailCall -> control = tailCall.call();
+                case Application(Expression function, Expression argument) -> {
+                    stack.push(new ApplyTo(Thunk.delay(argument, env)));
+                    control = function;
+                }
+                case Call call -> {
+                    var arguments = new Expression[call.getArguments().length];
+                    for (var i = 0; i < arguments.length; i++) {
+                        if (!call.isStrict(i)) arguments[i] = Thunk.delay(call.getArguments()[i], env);
+                    }
+
+                    evaluateArguments(call, arguments, env, 0);
+                }
+                case Thunk thunk -> {
+                    if (thunk.isEvaluated() || !thunk.claim()) {
+                        value = thunk.getValue();
+                    } else {
+                        control = thunk.getExpression();
+                        env = thunk.getEnvironment();
+                        thunk.blackhole();
+                        stack.push(new Update(thunk, control, env));
+                        Budget.tick();
+                    }
+                }
+                default -> value = control.evaluate(env);
+            }
+        }
+
+        private void resume(Continuation continuation) {
+            switch (continuation) {
+                case Update(Thunk thunk, Expression ignored, Environment ignoredEnv) -> {
+                    thunk.setValue(value);
+                    updates++;
+                }
+                case ApplyTo(Expression argument) -> apply(argument);
+                case EvaluateArgument(Call call, Expression[] arguments, Environment callerEnv, int index) -> {
+                    arguments[index] = value;
+                    eagerArguments++;
+                    evaluateArguments(call, arguments, callerEnv, index + 1);
+                }
+                case ApplyAll(Call call, Expression[] arguments) -> applyAll(call, arguments);
+                case ForceArgument(BuiltinFunction function, List<Expression> arguments, int index) -> {
+                    arguments.set(index, value);
+                    forceArguments(function, arguments, index + 1);
+                }
+            }
+        }
+
+        private void evaluateArguments(Call call, Expression[] arguments, Environment callerEnv, int index) {
+            value = null;
+            env = callerEnv;
+
+            for (var i = index; i < arguments.length; i++) {
+                if (call.isStrict(i)) {
+                    stack.push(new EvaluateArgument(call, arguments, callerEnv, i));
+                    control = call.getArguments()[i];
+                    return;
+                }
+            }
+
+            stack.push(new ApplyAll(call, arguments));
+            control = call.getFunction();
+        }
+
+        private void apply(Expression argument) {
+            switch (value) {
+                case Closure(Lambda lambda, Expression[] captured) -> {
+                    control = lambda.body();
+                    env = new Environment(argument, captured);
+                    value = null;
+                    reductions++;
+                    Budget.tick();
+                }
+                case BuiltinFunction bf -> {
+                    if (!bf.isPartiallyApplied() && hasPendingArguments(bf.getArity() - 1)) {
+                        // Take the remaining arguments of a saturated call directly instead of partially applying
+                        var arguments = new Expression[bf.getArity()];
+                        arguments[0] = argument;
+                        for (var i = 1; i < arguments.length; i++) {
+                            arguments[i] = ((ApplyTo) stack.pop()).argument();
+                        }
+
+                        forceArguments(bf, Arrays.asList(arguments), 0);
+                        builtinReductions++;
+                        return;
+                    }
+
+                    if (!bf.isSaturatedBy(1)) {
+                        value = bf.partiallyApply(List.of(argument));
+                        return;
+                    }
+
+                    forceArguments(bf, bf.collectArguments(List.of(argument)), 0);
+                    builtinReductions++;
+                }
+                default -> throw new RuntimeException("Not a function: %s".formatted(value));
+            }
+        }
+
+        private void applyAll(Call call, Expression[] arguments) {
+            var first = 0;
+
+            if (value instanceof Closure(Lambda lambda, Expression[] captured)) {
+                var entry = call.entryFor(lambda, arguments.length);
+
+                control = entry.body();
+                env = entry.frame(captured, arguments, 0);
+                value = null;
+                reductions++;
+                Budget.tick();
+                first = entry.arity();
+            }
+
+            for (var i = arguments.length - 1; i >= first; i--) {
+                stack.push(new ApplyTo(arguments[i]));
+            }
+        }
+
+        private boolean hasPendingArguments(int count) {
+            var iterator = stack.iterator();
+            for (var i = 0; i < count; i++) {
+                if (!iterator.hasNext() || !(iterator.next() instanceof ApplyTo)) return false;
+            }
+
+            return true;
+        }
+
+        private void forceArguments(BuiltinFunction function, List<Expression> arguments, int index) {
+            value = null;
+
+            if (index < function.getStrictArguments()) {
+                stack.push(new ForceArgument(function, arguments, index));
+                control = arguments.get(index);
+            } else {
+                // The result of a builtin refers to no local variables
+                control = function.applyFully(arguments);
+                env = Environment.EMPTY;
+            }
+        }
+    }
+
+    private Map<String, Long> statistics = Map.of();
+
+    @Override
+    public Expression evaluate(Expression program) {
+        var execution = new Execution(program);
+        var result = execution.run();
+
+        var statistics = new LinkedHashMap<String, Long>();
+        statistics.put("reductions", execution.reductions);
+        statistics.put("builtin reductions", execution.builtinReductions);
+        statistics.put("updates", execution.updates);
+        statistics.put("eager arguments", execution.eagerArguments);
+        this.statistics = statistics;
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        return statistics;
+    }
+}
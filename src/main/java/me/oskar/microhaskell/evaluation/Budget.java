@@ -0,0 +1,240 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Limits on the resources one evaluation may use, so that a divergent program ends with a result instead of taking
+ * over a core or the heap. A limit of 0 means unlimited.
+ * <p>
+ * Evaluators count their reductions, i.e. entered lambdas and supercombinators, iterations of loops and forced
+ * thunks, through {@link #tick()}. The limits are only checked every {@value #CHECK_INTERVAL} reductions, since
+ * reading the clock and the allocation counter of a thread costs more than hundreds of reductions, so the deadline
+ * and the allocation cap are enforced with a short delay. Allocation is measured per thread, which the JVM doesn't
+ * support for virtual threads, so an evaluation with an allocation cap always runs on a platform thread. Sparks are
+ * charged to the budget of the evaluation that created them.
+ */
+public record Budget(long maxReductions, long timeoutMillis, long maxAllocatedBytes) {
+
+    public static final Budget UNLIMITED = new Budget(0, 0, 0);
+
+    private static final int CHECK_INTERVAL = 1024;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final ThreadLocal<Meter> METER = new ThreadLocal<>();
+
+    // The number of threads that are metered, evaluations without a budget only look up their meter if there are any
+    private static final AtomicInteger METERED_THREADS = new AtomicInteger();
+    // The meter that was set up last, which saves the lookup of the thread local as long as only one thread is
+    // metered. Other threads may see a stale meter, which they ignore since it belongs to another thread.
+    private static Meter recent = null;
+
+    public enum Resource {
+        REDUCTIONS, TIME, ALLOCATION
+    }
+
+    /**
+     * The outcome of an evaluation within a budget: its value, or the resource it ran out of, and what it used.
+     */
+    public record Result(Expression value, Resource exhausted, long reductions, long elapsedNanos,
+                         long allocatedBytes) {
+
+        public boolean isExhausted() {
+            return exhausted != null;
+        }
+
+        public String describeUsage() {
+            return "%d reductions, %d ms, %d bytes allocated".formatted(reductions, elapsedNanos / 1_000_000,
+                    allocatedBytes);
+        }
+    }
+
+    public Budget {
+        if (maxReductions < 0 || timeoutMillis < 0 || maxAllocatedBytes < 0) {
+            throw new IllegalArgumentException("Invalid budget: %d reductions, %d ms, %d bytes"
+                    .formatted(maxReductions, timeoutMillis, maxAllocatedBytes));
+        }
+    }
+
+    public boolean isUnlimited() {
+        return maxReductions == 0 && timeoutMillis == 0 && maxAllocatedBytes == 0;
+    }
+
+    /**
+     * Evaluates the program within the budget. An unlimited budget is not metered and only measures the time.
+     */
+    public Result evaluate(Evaluator evaluator, Expression program) {
+        if (isUnlimited()) {
+            var start = System.nanoTime();
+            return new Result(evaluator.evaluate(program), null, 0, System.nanoTime() - start, 0);
+        }
+
+        if (maxAllocatedBytes > 0 && Thread.currentThread().isVirtual()) {
+            var task = new FutureTask<>(() -> evaluate(evaluator, program));
+            Thread.ofPlatform().start(task);
+
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while evaluating", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                if (e.getCause() instanceof Error cause) throw cause;
+
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        var account = new Account(this);
+        try {
+            var value = charge(account, () -> evaluator.evaluate(program));
+            return account.result(value);
+        } catch (Exhausted e) {
+            return account.result(null);
+        }
+    }
+
+    /**
+     * Counts a reduction of the current thread against the budget of its evaluation, if it has one.
+     *
+     * @throws RuntimeException if the budget is exhausted, which only the evaluation that owns it catches
+     */
+    public static void tick() {
+        if (METERED_THREADS.get() == 0) return;
+
+        var meter = recent;
+        if (meter == null || meter.thread != Thread.currentThread()) meter = METER.get();
+
+        if (meter != null && --meter.countdown <= 0) meter.check();
+    }
+
+    /**
+     * The account of the evaluation the current thread works for, or {@code null} if it has no budget.
+     */
+    static Account currentAccount() {
+        var meter = METER.get();
+        return meter == null ? null : meter.account;
+    }
+
+    /**
+     * Does work on the current thread and charges its reductions and allocations to the account.
+     */
+    static <T> T charge(Account account, Supplier<T> work) {
+        var previous = METER.get();
+        var meter = new Meter(account);
+        METER.set(meter);
+        recent = meter;
+        METERED_THREADS.incrementAndGet();
+
+        try {
+            return work.get();
+        } finally {
+            METERED_THREADS.decrementAndGet();
+            meter.settle();
+            METER.set(previous);
+            if (recent == meter) recent = previous;
+        }
+    }
+
+    /**
+     * What an evaluation and its sparks have used so far.
+     */
+    static final class Account {
+
+        private final Budget budget;
+        private final long start = System.nanoTime();
+        private final LongAdder reductions = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private volatile Resource exhausted = null;
+
+        private Account(Budget budget) {
+            this.budget = budget;
+        }
+
+        private int grant() {
+            if (budget.maxReductions == 0) return CHECK_INTERVAL;
+
+            // The check after the last permitted reduction fails
+            return (int) Math.max(1, Math.min(CHECK_INTERVAL, budget.maxReductions - reductions.sum() + 1));
+        }
+
+        private void check() {
+            if (exhausted != null) throw new Exhausted();
+
+            if (budget.maxReductions > 0 && reductions.sum() > budget.maxReductions) {
+                exhausted = Resource.REDUCTIONS;
+            } else if (budget.timeoutMillis > 0 && elapsedNanos() > budget.timeoutMillis * 1_000_000) {
+                exhausted = Resource.TIME;
+            } else if (budget.maxAllocatedBytes > 0 && allocatedBytes.sum() > budget.maxAllocatedBytes) {
+                exhausted = Resource.ALLOCATION;
+            } else {
+                return;
+            }
+
+            throw new Exhausted();
+        }
+
+        private long elapsedNanos() {
+            return System.nanoTime() - start;
+        }
+
+        private Result result(Expression value) {
+            return new Result(value, exhausted, reductions.sum(), elapsedNanos(), allocatedBytes.sum());
+        }
+    }
+
+    /**
+     * The reductions and allocations of one thread that have not been charged to its account yet.
+     */
+    private static final class Meter {
+
+        private final Account account;
+        private final Thread thread = Thread.currentThread();
+        private int granted;
+        private int countdown;
+        private long allocatedBytes = THREADS.getCurrentThreadAllocatedBytes();
+
+        private Meter(Account account) {
+            this.account = account;
+            granted = countdown = account.grant();
+        }
+
+        private void check() {
+            if (account.exhausted != null) {
+                // Reductions after the budget ran out are not charged
+                countdown = granted;
+                throw new Exhausted();
+            }
+
+            settle();
+            account.check();
+            granted = countdown = account.grant();
+        }
+
+        private void settle() {
+            account.reductions.add(granted - countdown);
+            granted = countdown;
+
+            // -1 if the JVM doesn't measure the allocations of this thread
+            var allocated = THREADS.getCurrentThreadAllocatedBytes();
+            if (allocatedBytes >= 0 && allocated >= 0) account.allocatedBytes.add(allocated - allocatedBytes);
+            allocatedBytes = allocated;
+        }
+    }
+
+    private static final class Exhausted extends RuntimeException {
+
+        private Exhausted() {
+            super("Budget exhausted", null, false, false);
+        }
+    }
+}
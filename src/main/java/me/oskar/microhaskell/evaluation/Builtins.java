@@ -1,122 +1,155 @@
 package me.oskar.microhaskell.evaluation;
 
 import me.oskar.microhaskell.evaluation.expression.BuiltinFunction;
+import me.oskar.microhaskell.evaluation.expression.Cons;
 import me.oskar.microhaskell.evaluation.expression.Expression;
 import me.oskar.microhaskell.evaluation.expression.IntLiteral;
+import me.oskar.microhaskell.evaluation.expression.IntOperator;
+import me.oskar.microhaskell.evaluation.expression.Nil;
 import me.oskar.microhaskell.table.OperatorEntry;
 import me.oskar.microhaskell.table.SymbolTable;
 import me.oskar.microhaskell.table.VariableEntry;
 
+import java.math.BigInteger;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Builtins {
 
+    static final IntOperator ADD = IntOperator.of(Math::addExact, BigInteger::add);
+    static final IntOperator EQUAL = IntOperator.comparison(c -> c == 0);
+
+    /**
+     * {@code speculate f a b} applies the strict binary builtin {@code f} to {@code a} and {@code b}, evaluating
+     * {@code a} in a spark while {@code b} is evaluated. It is not entered into the symbol table, the
+     * {@link me.oskar.microhaskell.ir.Speculator} introduces it for operations with expensive operands.
+     */
+    public static final BuiltinFunction SPECULATE = BuiltinFunction.of(3, 0,
+            args -> Sparks.speculate(args.getFirst(), args.get(1), args.get(2)));
+
     public static Map<String, Expression> initialEnv(SymbolTable symbolTable) {
-        var env = new HashMap<String, Expression>();
+        return initialEnv(symbolTable, true);
+    }
 
-        env.put("+", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
+    /**
+     * Creates the builtins and enters them into the symbol table. Unless {@code nativeLists} is disabled, the hot list
+     * functions of the prelude are builtins as well, which replace their definitions in the prelude.
+     */
+    public static Map<String, Expression> initialEnv(SymbolTable symbolTable, boolean nativeLists) {
+        var env = new HashMap<String, Expression>();
 
-            return new IntLiteral(arg1.value() + arg2.value());
-        }));
+        env.put("+", BuiltinFunction.integer(ADD));
         symbolTable.enter("+", new VariableEntry());
         symbolTable.enterOperator("+", new OperatorEntry(OperatorEntry.Associativity.LEFT, 6));
 
-        env.put("-", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() - arg2.value());
-        }));
+        env.put("-", BuiltinFunction.integer(IntOperator.of(Math::subtractExact, BigInteger::subtract)));
         symbolTable.enter("-", new VariableEntry());
         symbolTable.enterOperator("-", new OperatorEntry(OperatorEntry.Associativity.LEFT, 6));
 
-        env.put("*", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() * arg2.value());
-        }));
+        env.put("*", BuiltinFunction.integer(IntOperator.of(Math::multiplyExact, BigInteger::multiply)));
         symbolTable.enter("*", new VariableEntry());
         symbolTable.enterOperator("*", new OperatorEntry(OperatorEntry.Associativity.LEFT, 7));
 
-        env.put("div", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() / arg2.value());
-        }));
+        env.put("div", BuiltinFunction.integer(IntOperator.division(Math::divideExact, BigInteger::divide)));
         symbolTable.enter("div", new VariableEntry());
         symbolTable.enterOperator("div", new OperatorEntry(OperatorEntry.Associativity.LEFT, 7));
 
-        env.put("==", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() == arg2.value() ? 1 : 0);
-        }));
+        env.put("==", BuiltinFunction.integer(EQUAL));
         symbolTable.enter("==", new VariableEntry());
         symbolTable.enterOperator("==", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put("/=", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() != arg2.value() ? 1 : 0);
-        }));
+        env.put("/=", BuiltinFunction.integer(IntOperator.comparison(c -> c != 0)));
         symbolTable.enter("/=", new VariableEntry());
         symbolTable.enterOperator("/=", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put("<=", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() <= arg2.value() ? 1 : 0);
-        }));
+        env.put("<=", BuiltinFunction.integer(IntOperator.comparison(c -> c <= 0)));
         symbolTable.enter("<=", new VariableEntry());
         symbolTable.enterOperator("<=", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put("<", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() < arg2.value() ? 1 : 0);
-        }));
+        env.put("<", BuiltinFunction.integer(IntOperator.comparison(c -> c < 0)));
         symbolTable.enter("<", new VariableEntry());
         symbolTable.enterOperator("<", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put(">=", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() >= arg2.value() ? 1 : 0);
-        }));
+        env.put(">=", BuiltinFunction.integer(IntOperator.comparison(c -> c >= 0)));
         symbolTable.enter(">=", new VariableEntry());
         symbolTable.enterOperator(">=", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put(">", BuiltinFunction.of(2, args -> {
-            var arg1 = (IntLiteral) args.getFirst().evaluate(env);
-            var arg2 = (IntLiteral) args.get(1).evaluate(env);
-
-            return new IntLiteral(arg1.value() > arg2.value() ? 1 : 0);
-        }));
+        env.put(">", BuiltinFunction.integer(IntOperator.comparison(c -> c > 0)));
         symbolTable.enter(">", new VariableEntry());
         symbolTable.enterOperator(">", new OperatorEntry(OperatorEntry.Associativity.NONE, 4));
 
-        env.put("if", BuiltinFunction.of(3, args -> {
-            var condition = (IntLiteral) args.getFirst().evaluate(env);
-            if (condition.value() == 1) {
-                var consequence = args.get(1);
-                return consequence.evaluate(env);
+        env.put("if", BuiltinFunction.of(3, 1, args -> {
+            if (args.getFirst() instanceof IntLiteral(long condition) && condition == 1) {
+                return args.get(1);
             } else {
-                var alternative = args.get(2);
-                return alternative.evaluate(env);
+                return args.get(2);
             }
         }));
         symbolTable.enter("if", new VariableEntry());
 
+        env.put("nil", Nil.NIL);
+        symbolTable.enter("nil", new VariableEntry());
+
+        env.put("cons", BuiltinFunction.of(2, 0, args -> new Cons(args.getFirst(), args.get(1))));
+        symbolTable.enter("cons", new VariableEntry());
+
+        env.put("head", BuiltinFunction.selector(Cons::head,
+                args -> ListBuiltins.cell(args.getFirst(), "head").head()));
+        symbolTable.enter("head", new VariableEntry());
+
+        env.put("tail", BuiltinFunction.selector(Cons::tail,
+                args -> ListBuiltins.cell(args.getFirst(), "tail").tail()));
+        symbolTable.enter("tail", new VariableEntry());
+
+        env.put("null", BuiltinFunction.strict(1,
+                args -> IntLiteral.of(ListBuiltins.list(args.getFirst()) instanceof Nil)));
+        symbolTable.enter("null", new VariableEntry());
+
+        // `par a b` sparks the evaluation of `a` and returns `b`, `pseq a b` evaluates `a` before returning `b`
+        env.put("par", BuiltinFunction.of(2, 0, args -> {
+            Sparks.spark(args.getFirst());
+            return args.get(1);
+        }));
+        symbolTable.enter("par", new VariableEntry());
+
+        env.put("pseq", BuiltinFunction.of(2, 1, args -> args.get(1)));
+        symbolTable.enter("pseq", new VariableEntry());
+
+        // `memo f` remembers the applications of `f` to integers, see MemoTable
+        env.put("memo", BuiltinFunction.of(1, 0, args -> MemoTable.memoize(args.getFirst())));
+        symbolTable.enter("memo", new VariableEntry());
+
+        if (!nativeLists) return env;
+
+        env.put("map", BuiltinFunction.of(2, 0, args -> ListBuiltins.map(args.getFirst(), args.get(1))));
+        symbolTable.enter("map", new VariableEntry());
+
+        env.put("filter", BuiltinFunction.of(2, 0, args -> ListBuiltins.filter(args.getFirst(), args.get(1))));
+        symbolTable.enter("filter", new VariableEntry());
+
+        env.put("foldr", BuiltinFunction.of(3, 0,
+                args -> ListBuiltins.foldr(args.getFirst(), args.get(1), args.get(2))));
+        symbolTable.enter("foldr", new VariableEntry());
+
+        env.put("foldl", BuiltinFunction.of(3, 0,
+                args -> ListBuiltins.foldl(args.getFirst(), args.get(1), args.get(2))));
+        symbolTable.enter("foldl", new VariableEntry());
+
+        env.put("length", BuiltinFunction.strict(1, args -> ListBuiltins.length(args.getFirst())));
+        symbolTable.enter("length", new VariableEntry());
+
+        env.put("sum", BuiltinFunction.strict(1, args -> ListBuiltins.sum(args.getFirst())));
+        symbolTable.enter("sum", new VariableEntry());
+
+        env.put("reverse", BuiltinFunction.strict(1, args -> ListBuiltins.reverse(args.getFirst())));
+        symbolTable.enter("reverse", new VariableEntry());
+
+        env.put("elem", BuiltinFunction.of(2, 0, args -> ListBuiltins.elem(args.getFirst(), args.get(1))));
+        symbolTable.enter("elem", new VariableEntry());
+
+        env.put("take", BuiltinFunction.of(2, 1, args -> ListBuiltins.take(args.getFirst(), args.get(1))));
+        symbolTable.enter("take", new VariableEntry());
+
         return env;
     }
 }
@@ -0,0 +1,47 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+public final class Environment {
+
+    public static final Environment EMPTY = new Environment(null, new Expression[0]);
+
+    private final Expression argument;
+    private final Expression[] captured;
+
+    public Environment(Expression argument, Expression[] captured) {
+        this.argument = argument;
+        this.captured = captured;
+    }
+
+    public Expression getArgument() {
+        return argument;
+    }
+
+    public Expression getCaptured(int index) {
+        return captured[index];
+    }
+
+    public Expression lookup(int slot) {
+        return slot == 0 ? argument : captured[slot - 1];
+    }
+
+    /**
+     * Copy of this frame in which every slot in {@code slots} holds the corresponding value. Negative slots are
+     * skipped.
+     */
+    public Environment update(int[] slots, Expression[] values) {
+        var newArgument = argument;
+        var newCaptured = captured.clone();
+
+        for (var i = 0; i < slots.length; i++) {
+            if (slots[i] == 0) {
+                newArgument = values[i];
+            } else if (slots[i] > 0) {
+                newCaptured[slots[i] - 1] = values[i];
+            }
+        }
+
+        return new Environment(newArgument, newCaptured);
+    }
+}
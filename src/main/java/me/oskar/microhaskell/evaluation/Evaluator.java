@@ -0,0 +1,18 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+import java.util.Map;
+
+public interface Evaluator {
+
+    default Expression prepare(Expression program) {
+        return program;
+    }
+
+    Expression evaluate(Expression program);
+
+    default Map<String, Long> getStatistics() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,194 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Application;
+import me.oskar.microhaskell.evaluation.expression.BuiltinFunction;
+import me.oskar.microhaskell.evaluation.expression.Cons;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.IntLiteral;
+import me.oskar.microhaskell.evaluation.expression.IntOperator;
+import me.oskar.microhaskell.evaluation.expression.Nil;
+import me.oskar.microhaskell.evaluation.expression.Thunk;
+
+import java.util.List;
+
+/**
+ * Native implementations of the list functions of the prelude. They are as lazy as their definitions in
+ * {@code prelude.mhs}: elements and the rest of a list are delayed in thunks and only computed once they are demanded.
+ * <p>
+ * The builtins never evaluate anything themselves. Each one returns the application of a step builtin that takes the
+ * list as its first, strict argument, and a step returns the application of the next step to the rest of the list,
+ * so the running evaluator forces the cells and drives the iteration. On the abstract machine and the graph reducer
+ * a traversal of a long list therefore needs no Java stack, and the evaluators that use the Java stack run the steps
+ * in the loop of {@link BuiltinFunction#evaluateResult(Expression)}.
+ * Functions passed to them are applied by the evaluator as well, so they work with the function values of every
+ * evaluator.
+ */
+final class ListBuiltins {
+
+    private static final IntOperator GREATER = IntOperator.comparison(c -> c > 0);
+    private static final BuiltinFunction ADD = BuiltinFunction.integer(Builtins.ADD);
+    private static final BuiltinFunction EQUAL = BuiltinFunction.integer(Builtins.EQUAL);
+
+    private static final BuiltinFunction MAP = BuiltinFunction.of(2, 1, ListBuiltins::mapStep);
+    private static final BuiltinFunction FILTER = BuiltinFunction.of(2, 1, ListBuiltins::filterStep);
+    private static final BuiltinFunction FILTER_TEST = BuiltinFunction.of(3, 2, ListBuiltins::filterTest);
+    private static final BuiltinFunction FOLDR = BuiltinFunction.of(3, 1, ListBuiltins::foldrStep);
+    private static final BuiltinFunction FOLDL = BuiltinFunction.of(3, 1, ListBuiltins::foldlStep);
+    private static final BuiltinFunction LENGTH = BuiltinFunction.strict(2, ListBuiltins::lengthStep);
+    private static final BuiltinFunction SUM = BuiltinFunction.strict(2, ListBuiltins::sumStep);
+    private static final BuiltinFunction REVERSE = BuiltinFunction.of(2, 1, ListBuiltins::reverseStep);
+    private static final BuiltinFunction ELEM = BuiltinFunction.of(2, 1, ListBuiltins::elemStep);
+    private static final BuiltinFunction ELEM_TEST = BuiltinFunction.of(3, 1, ListBuiltins::elemTest);
+    private static final BuiltinFunction TAKE = BuiltinFunction.strict(2, ListBuiltins::takeStep);
+
+    private ListBuiltins() {
+    }
+
+    static Expression map(Expression function, Expression list) {
+        return apply(MAP, list, function);
+    }
+
+    static Expression filter(Expression predicate, Expression list) {
+        return apply(FILTER, list, predicate);
+    }
+
+    static Expression foldr(Expression function, Expression initial, Expression list) {
+        return apply(FOLDR, list, function, initial);
+    }
+
+    static Expression foldl(Expression function, Expression initial, Expression list) {
+        return apply(FOLDL, list, function, initial);
+    }
+
+    static Expression length(Expression list) {
+        return apply(LENGTH, list, IntLiteral.of(0));
+    }
+
+    static Expression sum(Expression list) {
+        return apply(SUM, list, IntLiteral.of(0));
+    }
+
+    static Expression reverse(Expression list) {
+        return apply(REVERSE, list, Nil.NIL);
+    }
+
+    static Expression elem(Expression value, Expression list) {
+        return apply(ELEM, list, value);
+    }
+
+    static Expression take(Expression count, Expression list) {
+        if (!isTrue(GREATER.apply(count, IntLiteral.of(0)))) return Nil.NIL;
+
+        return apply(TAKE, list, count);
+    }
+
+    private static Expression mapStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return Nil.NIL;
+
+        var function = args.get(1);
+        return new Cons(delay(new Application(function, head)), delay(apply(MAP, tail, function)));
+    }
+
+    private static Expression filterStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression ignored))) return Nil.NIL;
+
+        var predicate = args.get(1);
+        return apply(FILTER_TEST, new Application(predicate, head), args.getFirst(), predicate);
+    }
+
+    /**
+     * Keeps the head of the cell if the predicate holds for it. Otherwise the next step is returned instead of being
+     * delayed, so a long run of dropped elements doesn't build up a chain of thunks.
+     */
+    private static Expression filterTest(List<Expression> args) {
+        var cell = (Cons) args.get(1);
+        var rest = apply(FILTER, cell.tail(), args.get(2));
+
+        return isTrue(args.getFirst()) ? new Cons(cell.head(), delay(rest)) : rest;
+    }
+
+    private static Expression foldrStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return args.get(2);
+
+        var function = args.get(1);
+        return apply(function, head, apply(FOLDR, tail, function, args.get(2)));
+    }
+
+    private static Expression foldlStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return args.get(2);
+
+        var function = args.get(1);
+        return apply(FOLDL, tail, function, apply(function, args.get(2), head));
+    }
+
+    private static Expression lengthStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression ignored, Expression tail))) return args.get(1);
+
+        return apply(LENGTH, tail, Builtins.ADD.apply(args.get(1), IntLiteral.of(1)));
+    }
+
+    private static Expression sumStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return args.get(1);
+
+        return apply(SUM, tail, apply(ADD, args.get(1), head));
+    }
+
+    private static Expression reverseStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return args.get(1);
+
+        return apply(REVERSE, tail, new Cons(head, args.get(1)));
+    }
+
+    private static Expression elemStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return IntLiteral.FALSE;
+
+        var value = args.get(1);
+        return apply(ELEM_TEST, apply(EQUAL, head, value), tail, value);
+    }
+
+    private static Expression elemTest(List<Expression> args) {
+        return isTrue(args.getFirst()) ? IntLiteral.TRUE : apply(ELEM, args.get(1), args.get(2));
+    }
+
+    private static Expression takeStep(List<Expression> args) {
+        if (!(list(args.getFirst()) instanceof Cons(Expression head, Expression tail))) return Nil.NIL;
+
+        var count = Builtins.ADD.apply(args.get(1), IntLiteral.of(-1));
+        if (!isTrue(GREATER.apply(count, IntLiteral.of(0)))) return new Cons(head, Nil.NIL);
+
+        return new Cons(head, delay(apply(TAKE, tail, count)));
+    }
+
+    static Expression list(Expression value) {
+        if (!(value instanceof Cons) && !(value instanceof Nil)) {
+            throw new RuntimeException("Not a list: %s".formatted(value));
+        }
+
+        return value;
+    }
+
+    static Cons cell(Expression value, String builtin) {
+        if (!(list(value) instanceof Cons cons)) {
+            throw new RuntimeException("Empty list passed to %s".formatted(builtin));
+        }
+
+        return cons;
+    }
+
+    private static Expression apply(Expression function, Expression... arguments) {
+        var application = function;
+        for (var argument : arguments) {
+            application = new Application(application, argument);
+        }
+
+        return application;
+    }
+
+    private static Thunk delay(Expression expression) {
+        return new Thunk(expression, Environment.EMPTY);
+    }
+
+    private static boolean isTrue(Expression condition) {
+        return condition instanceof IntLiteral(long value) && value == 1;
+    }
+}
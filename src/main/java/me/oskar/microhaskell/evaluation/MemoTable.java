@@ -0,0 +1,172 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Application;
+import me.oskar.microhaskell.evaluation.expression.BigIntLiteral;
+import me.oskar.microhaskell.evaluation.expression.BuiltinFunction;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.IntLiteral;
+import me.oskar.microhaskell.evaluation.expression.Thunk;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The results of a function memoized with {@code memo}, by the integer it was applied to. A table holds the thunk of
+ * every application rather than its value, so an application is only evaluated once it is demanded, and threads that
+ * demand it at the same time, e.g. while evaluating sparks, wait for the one that claimed it instead of evaluating it
+ * again. An evicted application is evaluated again the next time it is demanded, which costs time but never changes
+ * the result.
+ */
+public abstract class MemoTable {
+
+    public enum Policy {
+        /**
+         * Keeps the most recently used applications up to the capacity of the table.
+         */
+        LRU,
+        /**
+         * Keeps every application until the garbage collector needs the memory.
+         */
+        SOFT
+    }
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private static volatile Policy policy = Policy.LRU;
+    private static volatile int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * Sets the policy and, for {@link Policy#LRU}, the capacity of the tables created from now on.
+     */
+    public static void configure(Policy policy, int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity: %d".formatted(capacity));
+
+        MemoTable.policy = policy;
+        MemoTable.capacity = capacity;
+    }
+
+    // The statistics of the evaluation that created the table
+    final RuntimeStatistics statistics = RuntimeStatistics.current();
+
+    /**
+     * Wraps a function in a builtin that looks up its applications in a new table.
+     */
+    static BuiltinFunction memoize(Expression function) {
+        var table = switch (policy) {
+            case LRU -> new Lru(capacity);
+            case SOFT -> new Soft();
+        };
+
+        return BuiltinFunction.strict(1, args -> table.lookup(keyOf(args.getFirst()), function));
+    }
+
+    private static Expression keyOf(Expression argument) {
+        if (!(argument instanceof IntLiteral) && !(argument instanceof BigIntLiteral)) {
+            throw new RuntimeException("Memoized function applied to a non-integer: %s".formatted(argument));
+        }
+
+        return argument;
+    }
+
+    private static Thunk delayApplication(Expression function, Expression key) {
+        return new Thunk(new Application(function, key), Environment.EMPTY);
+    }
+
+    /**
+     * The thunk of the application of the function to the key, which is created if the table doesn't have it.
+     */
+    abstract Thunk lookup(Expression key, Expression function);
+
+    private static final class Lru extends MemoTable {
+
+        // Lookups reorder the map, so even they need the lock
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Expression, Thunk> entries;
+
+        private Lru(int capacity) {
+            entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Expression, Thunk> eldest) {
+                    if (size() <= capacity) return false;
+
+                    statistics.memoEvictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        @Override
+        Thunk lookup(Expression key, Expression function) {
+            lock.lock();
+            try {
+                var thunk = entries.get(key);
+                if (thunk != null) {
+                    statistics.memoHits.increment();
+                    return thunk;
+                }
+
+                statistics.memoMisses.increment();
+                thunk = delayApplication(function, key);
+                entries.put(key, thunk);
+
+                return thunk;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static final class Soft extends MemoTable {
+
+        private static final class Entry extends SoftReference<Thunk> {
+
+            private final Expression key;
+
+            private Entry(Expression key, Thunk thunk, ReferenceQueue<Thunk> queue) {
+                super(thunk, queue);
+                this.key = key;
+            }
+        }
+
+        private final ConcurrentHashMap<Expression, Entry> entries = new ConcurrentHashMap<>();
+        private final ReferenceQueue<Thunk> cleared = new ReferenceQueue<>();
+
+        @Override
+        Thunk lookup(Expression key, Expression function) {
+            expungeClearedEntries();
+
+            var entry = entries.get(key);
+            var thunk = entry == null ? null : entry.get();
+            if (thunk != null) {
+                statistics.memoHits.increment();
+                return thunk;
+            }
+
+            var created = delayApplication(function, key);
+            entry = entries.merge(key, new Entry(key, created, cleared),
+                    (current, replacement) -> current.get() != null ? current : replacement);
+
+            // Another thread may have added the application in the meantime
+            thunk = entry.get();
+            if (thunk == created) {
+                statistics.memoMisses.increment();
+                return created;
+            }
+
+            if (thunk == null) return lookup(key, function);
+
+            statistics.memoHits.increment();
+            return thunk;
+        }
+
+        private void expungeClearedEntries() {
+            for (var reference = cleared.poll(); reference != null; reference = cleared.poll()) {
+                if (entries.remove(((Entry) reference).key, reference)) statistics.memoEvictions.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.specialization.Specializer;
+
+public class RecursiveEvaluator implements Evaluator {
+
+    @Override
+    public Expression prepare(Expression program) {
+        return new Specializer().specialize(program);
+    }
+
+    @Override
+    public Expression evaluate(Expression program) {
+        return program.evaluate(Environment.EMPTY);
+    }
+}
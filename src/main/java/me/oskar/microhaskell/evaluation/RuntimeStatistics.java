@@ -0,0 +1,79 @@
+package me.oskar.microhaskell.evaluation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The counters of the sparks and memo tables of an evaluation. The server runs several evaluations at once, so each of
+ * them collects its own, and everything else counts towards the statistics of the process. A spark counts towards the
+ * evaluation that created it, and the lookups in a memo table towards the evaluation that created the table.
+ */
+public final class RuntimeStatistics {
+
+    private static final RuntimeStatistics PROCESS = new RuntimeStatistics();
+    // Inherited, so an evaluation that Budget moves to a platform thread of its own keeps collecting
+    private static final InheritableThreadLocal<RuntimeStatistics> CURRENT = new InheritableThreadLocal<>();
+
+    final LongAdder sparksCreated = new LongAdder();
+    final LongAdder sparksConverted = new LongAdder();
+    final LongAdder sparksFizzled = new LongAdder();
+    final LongAdder memoHits = new LongAdder();
+    final LongAdder memoMisses = new LongAdder();
+    final LongAdder memoEvictions = new LongAdder();
+
+    /**
+     * The statistics of the evaluations that don't collect their own, e.g. the one of the command line interpreter.
+     */
+    public static RuntimeStatistics ofProcess() {
+        return PROCESS;
+    }
+
+    /**
+     * Does work on the current thread and counts its sparks and memo tables in the statistics.
+     */
+    public static <T> T collect(RuntimeStatistics statistics, Supplier<T> work) {
+        var previous = CURRENT.get();
+        CURRENT.set(statistics);
+
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * The statistics the current thread counts towards.
+     */
+    static RuntimeStatistics current() {
+        var statistics = CURRENT.get();
+        return statistics == null ? PROCESS : statistics;
+    }
+
+    /**
+     * The number of sparks created, converted, i.e. evaluated by a worker, and fizzled, and of the applications found
+     * in and added to memo tables and evicted again, since the last reset.
+     */
+    public Map<String, Long> getStatistics() {
+        var statistics = new LinkedHashMap<String, Long>();
+        statistics.put("sparks created", sparksCreated.sum());
+        statistics.put("sparks converted", sparksConverted.sum());
+        statistics.put("sparks fizzled", sparksFizzled.sum());
+        statistics.put("memo hits", memoHits.sum());
+        statistics.put("memo misses", memoMisses.sum());
+        statistics.put("memo evictions", memoEvictions.sum());
+
+        return statistics;
+    }
+
+    public void reset() {
+        sparksCreated.reset();
+        sparksConverted.reset();
+        sparksFizzled.reset();
+        memoHits.reset();
+        memoMisses.reset();
+        memoEvictions.reset();
+    }
+}
@@ -0,0 +1,133 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.evaluation.expression.Application;
+import me.oskar.microhaskell.evaluation.expression.BuiltinFunction;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.Thunk;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The pool that evaluates the thunks passed to {@code par} and the operands of speculative operations in the
+ * background. A spark created by a worker is pushed onto the worker's own deque and stolen from there by idle workers.
+ * A spark whose thunk has already been evaluated or is being evaluated by the time a worker gets to it fizzles, and so
+ * does a spark whose evaluation fails: the thread that demands the value evaluates the thunk again and gets the
+ * error. Sparks therefore never change the result of a program, only who computes it.
+ * <p>
+ * Only thunks are sparked. Values have nothing left to compute, and the graph reducer passes graph nodes to builtins,
+ * which it reduces in place and single-threaded, so {@code par} is sequential there.
+ */
+public final class Sparks {
+
+    // Like the lazy splitting of parallel streams: a worker that still has a few sparks of its own queued has enough
+    // work for its idle siblings to steal
+    private static final int MAX_SURPLUS_SPARKS = 3;
+
+    /**
+     * {@code afterOperands b a f} applies {@code f} to {@code a} and {@code b} once it has evaluated {@code b} and
+     * then {@code a}.
+     */
+    private static final BuiltinFunction AFTER_OPERANDS = BuiltinFunction.of(3, 2,
+            args -> new Application(new Application(args.get(2), args.get(1)), args.getFirst()));
+
+    private static volatile ForkJoinPool pool = createPool(Runtime.getRuntime().availableProcessors());
+
+    private Sparks() {
+    }
+
+    /**
+     * Sets the number of cores a program may use, i.e. the thread that evaluates the program and {@code cores - 1}
+     * workers for sparks. Sparks are ignored if there is a single core.
+     */
+    public static synchronized void setCores(int cores) {
+        if (cores < 1) throw new IllegalArgumentException("Invalid number of cores: %d".formatted(cores));
+
+        var previous = pool;
+        pool = createPool(cores);
+        if (previous != null) previous.shutdown();
+    }
+
+    private static ForkJoinPool createPool(int cores) {
+        if (cores == 1) return null;
+
+        // Workers use the default stack size, so -Xss applies to the evaluation of sparks as well
+        return new ForkJoinPool(cores - 1, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+    }
+
+    static void spark(Expression expression) {
+        if (!(expression instanceof Thunk thunk) || thunk.isEvaluated()) return;
+
+        var current = pool;
+        if (current == null) return;
+
+        var statistics = RuntimeStatistics.current();
+        statistics.sparksCreated.increment();
+
+        var task = new Spark(thunk, Budget.currentAccount(), statistics);
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread worker && worker.getPool() == current) {
+            task.fork();
+        } else {
+            current.execute(task);
+        }
+    }
+
+    /**
+     * Applies a strict binary builtin to two operands, sparking the left one first unless the pool already has enough
+     * work, so the granularity of the sparks adapts to the number of idle workers. Nothing is evaluated here: the
+     * application is returned to the running evaluator, which evaluates the right operand while the spark evaluates
+     * the left one. If both operands of a sparked operation fail, the error of the right one is raised.
+     */
+    static Expression speculate(Expression function, Expression left, Expression right) {
+        if (!isHungry() || !(left instanceof Thunk thunk) || thunk.isEvaluated()) {
+            return new Application(new Application(function, left), right);
+        }
+
+        spark(left);
+
+        return new Application(new Application(new Application(AFTER_OPERANDS, right), left), function);
+    }
+
+    private static boolean isHungry() {
+        var current = pool;
+        if (current == null) return false;
+
+        if (Thread.currentThread() instanceof ForkJoinWorkerThread worker && worker.getPool() == current) {
+            return ForkJoinTask.getSurplusQueuedTaskCount() < MAX_SURPLUS_SPARKS;
+        }
+
+        return current.getQueuedSubmissionCount() < MAX_SURPLUS_SPARKS;
+    }
+
+    private static final class Spark extends RecursiveAction {
+
+        private final Thunk thunk;
+        private final Budget.Account account;
+        private final RuntimeStatistics statistics;
+
+        private Spark(Thunk thunk, Budget.Account account, RuntimeStatistics statistics) {
+            this.thunk = thunk;
+            this.account = account;
+            this.statistics = statistics;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                var evaluated = RuntimeStatistics.collect(statistics, () -> account == null
+                        ? thunk.forceIfUnclaimed()
+                        : Budget.charge(account, thunk::forceIfUnclaimed));
+                if (evaluated) {
+                    statistics.sparksConverted.increment();
+                    return;
+                }
+            } catch (RuntimeException | StackOverflowError e) {
+                // Left to the thread that demands the value
+            }
+
+            statistics.sparksFizzled.increment();
+        }
+    }
+}
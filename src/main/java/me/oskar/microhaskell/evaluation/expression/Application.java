@@ -1,24 +1,28 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
 
 public record Application(Expression function, Expression argument) implements Expression {
 
     @Override
-    public Expression evaluate(Map<String, Expression> env) {
-        var evaluatedFunction = function.evaluate(env);
-        var lazyArgument = new Thunk(argument, env);
+    public Expression evaluate(Environment env) {
+        return apply(function.evaluate(env), Thunk.delay(argument, env));
+    }
 
-        if (evaluatedFunction instanceof Closure(Lambda lambda, Map<String, Expression> enclosedEnv)) {
-            var extendedEnv = new HashMap<>(enclosedEnv);
-            extendedEnv.put(lambda.parameter(), lazyArgument);
-            return lambda.body().evaluate(extendedEnv);
-        } else if (evaluatedFunction instanceof BuiltinFunction bf) {
-            return bf.apply(List.of(lazyArgument), env);
+    public static Expression apply(Expression function, Expression argument) {
+        if (function instanceof Closure(Lambda lambda, Expression[] captured)) {
+            Budget.tick();
+            return lambda.body().evaluate(new Environment(argument, captured));
+        } else if (function instanceof BuiltinFunction bf) {
+            // Handed over in an array the builtin clears, so this frame doesn't keep a list alive the builtin walks
+            var arguments = new Expression[]{argument};
+            argument = null;
+            return bf.apply(arguments);
+        } else if (function instanceof FunctionValue value) {
+            return value.apply(argument);
         } else {
-            throw new RuntimeException("Not a function: %s".formatted(evaluatedFunction));
+            throw new RuntimeException("Not a function: %s".formatted(function));
         }
     }
 
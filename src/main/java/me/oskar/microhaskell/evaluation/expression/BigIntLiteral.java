@@ -0,0 +1,26 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+import java.math.BigInteger;
+
+/**
+ * Integer that does not fit into a long. Only created through {@link IntLiteral#of(BigInteger)}.
+ */
+public record BigIntLiteral(BigInteger value) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return this;
+    }
+
+    @Override
+    public long evaluateLong(Environment env) {
+        throw new IntegerOverflow(this);
+    }
+
+    @Override
+    public String toString() {
+        return value.toString();
+    }
+}
@@ -1,18 +1,23 @@
 package me.oskar.microhaskell.evaluation.expression;
 
 
+import me.oskar.microhaskell.evaluation.Environment;
+
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Function;
 
 public abstract class BuiltinFunction implements Expression {
 
-    protected final List<Thunk> partialArguments;
+    protected final List<Expression> partialArguments;
     protected final int arity;
+    protected final int strictArguments;
 
-    protected BuiltinFunction(int arity, List<Thunk> partialArguments) {
+    protected BuiltinFunction(int arity, int strictArguments, List<Expression> partialArguments) {
         this.arity = arity;
+        this.strictArguments = strictArguments;
         this.partialArguments = partialArguments;
     }
 
@@ -21,41 +26,217 @@ public abstract class BuiltinFunction implements Expression {
         return "<builtin function>";
     }
 
-    abstract Expression applyFully(List<Thunk> args);
+    public int getArity() {
+        return arity;
+    }
+
+    public int getStrictArguments() {
+        return strictArguments;
+    }
+
+    /**
+     * The operation of a binary builtin on integers, or {@code null} if the builtin is not one. Evaluators use it to
+     * compute nested arithmetic and comparisons without boxing every intermediate result.
+     */
+    public IntOperator getIntOperator() {
+        return null;
+    }
+
+    /**
+     * The field a selector like {@code head} selects from an evaluated list, or {@code null} if the builtin is no
+     * selector or the list has no such field. Delayed selections are resolved as soon as their list is evaluated, see
+     * {@link Thunk#select(BuiltinFunction, Expression)}.
+     */
+    public Expression select(Expression list) {
+        return null;
+    }
+
+    public boolean isSelector() {
+        return false;
+    }
+
+    public boolean isPartiallyApplied() {
+        return !partialArguments.isEmpty();
+    }
+
+    /**
+     * Applies the builtin to all of its arguments. The first {@link #getStrictArguments()} arguments have already
+     * been evaluated, the remaining ones may still be unevaluated thunks. The result is either a value or a thunk that the
+     * caller still has to evaluate. The list is the caller's, a builtin copies the arguments it keeps.
+     */
+    public abstract Expression applyFully(List<Expression> args);
+
+    public boolean isSaturatedBy(int argumentCount) {
+        return partialArguments.size() + argumentCount >= arity;
+    }
 
-    public Expression apply(List<Thunk> newArgs, Map<String, Expression> env) {
+    public BuiltinFunction partiallyApply(List<Expression> newArgs) {
         var combinedArguments = new ArrayList<>(partialArguments);
         combinedArguments.addAll(newArgs);
 
-        if (combinedArguments.size() < arity) {
-            return new CurriedBuiltinFunction(arity, combinedArguments, this::applyFully);
-        } else if (combinedArguments.size() == arity) {
-            return applyFully(combinedArguments);
-        } else {
+        return new CurriedBuiltinFunction(arity, strictArguments, combinedArguments, this::applyFully);
+    }
+
+    public List<Expression> collectArguments(List<Expression> newArgs) {
+        var combinedArguments = new ArrayList<Expression>(partialArguments);
+        combinedArguments.addAll(newArgs);
+
+        if (combinedArguments.size() > arity) {
             throw new RuntimeException("Too many arguments to builtin function");
         }
+
+        return combinedArguments;
+    }
+
+    /**
+     * Applies the builtin to the arguments. The array is cleared once the builtin has taken over the arguments, see
+     * {@link #applyFullyAndClear(List)}.
+     */
+    public Expression apply(Expression[] newArgs) {
+        if (!isSaturatedBy(newArgs.length)) {
+            return partiallyApply(Arrays.asList(newArgs));
+        }
+
+        var combinedArguments = collectArguments(Arrays.asList(newArgs));
+        Arrays.fill(newArgs, null);
+        for (var i = 0; i < strictArguments; i++) {
+            combinedArguments.set(i, combinedArguments.get(i).evaluate(Environment.EMPTY));
+        }
+
+        return evaluateResult(applyFullyAndClear(combinedArguments));
+    }
+
+    /**
+     * Applies an unapplied builtin to exactly {@link #getArity()} arguments. The strict arguments are evaluated in
+     * place, so the array is handed to {@link #applyFully(List)} without being copied, and cleared afterwards.
+     */
+    public Expression applySaturated(Expression[] arguments) {
+        for (var i = 0; i < strictArguments; i++) {
+            arguments[i] = arguments[i].evaluate(Environment.EMPTY);
+        }
+
+        return evaluateResult(applyFullyAndClear(Arrays.asList(arguments)));
+    }
+
+    /**
+     * Applies the builtin like {@link #applyFully(List)} and clears the arguments, for evaluators that go on to
+     * evaluate the result on the Java stack. The frame of the caller still refers to the list, but no longer to e.g.
+     * the first cell of a list that {@code sum} walks through, so the cells it has passed can be collected.
+     */
+    public Expression applyFullyAndClear(List<Expression> args) {
+        var result = applyFully(args);
+        Collections.fill(args, null);
+
+        return result;
+    }
+
+    /**
+     * Evaluates the result of {@link #applyFully(List)} for evaluators that use the Java stack. Builtins that iterate,
+     * e.g. over a list, return the saturated application of the builtin for the next step, which is applied in this
+     * loop instead of a nested evaluation, so the iteration runs in constant stack space.
+     */
+    public static Expression evaluateResult(Expression result) {
+        while (result instanceof Application) {
+            var arguments = new ArrayList<Expression>();
+            var function = result;
+            while (function instanceof Application(Expression inner, Expression argument)) {
+                arguments.addFirst(argument);
+                function = inner;
+            }
+
+            var callee = function.evaluate(Environment.EMPTY);
+            if (!(callee instanceof BuiltinFunction bf) || bf.isPartiallyApplied() || bf.arity != arguments.size()) {
+                for (var argument : arguments) {
+                    callee = Application.apply(callee, Thunk.delay(argument, Environment.EMPTY));
+                }
+
+                return callee;
+            }
+
+            for (var i = 0; i < arguments.size(); i++) {
+                var argument = arguments.get(i);
+                arguments.set(i, i < bf.strictArguments
+                        ? argument.evaluate(Environment.EMPTY)
+                        : Thunk.delay(argument, Environment.EMPTY));
+            }
+
+            result = bf.applyFully(arguments);
+        }
+
+        return result.evaluate(Environment.EMPTY);
+    }
+
+    public static BuiltinFunction of(int arity, int strictArguments, Function<List<Expression>, Expression> op) {
+        return new CurriedBuiltinFunction(arity, strictArguments, List.of(), op);
+    }
+
+    public static BuiltinFunction strict(int arity, Function<List<Expression>, Expression> op) {
+        return of(arity, arity, op);
+    }
+
+    public static BuiltinFunction integer(IntOperator operator) {
+        return new IntBuiltinFunction(operator);
     }
 
-    public static BuiltinFunction of(int arity, Function<List<Thunk>, Expression> op) {
-        return new CurriedBuiltinFunction(arity, List.of(), op);
+    /**
+     * Strict unary builtin that selects a field of a list cell, which {@code operation} does as well when the builtin
+     * is applied, e.g. failing on an empty list.
+     */
+    public static BuiltinFunction selector(Function<Cons, Expression> field,
+                                           Function<List<Expression>, Expression> operation) {
+        return new SelectorBuiltinFunction(field, operation);
     }
 
     private static class CurriedBuiltinFunction extends BuiltinFunction {
-        private final Function<List<Thunk>, Expression> operation;
+        private final Function<List<Expression>, Expression> operation;
 
-        public CurriedBuiltinFunction(int arity, List<Thunk> argsSoFar, Function<List<Thunk>, Expression> op) {
-            super(arity, argsSoFar);
+        public CurriedBuiltinFunction(int arity, int strictArguments, List<Expression> argsSoFar,
+                                      Function<List<Expression>, Expression> op) {
+            super(arity, strictArguments, argsSoFar);
             this.operation = op;
         }
 
         @Override
-        Expression applyFully(List<Thunk> args) {
+        public Expression applyFully(List<Expression> args) {
             return operation.apply(args);
         }
 
         @Override
-        public Expression evaluate(Map<String, Expression> env) {
+        public Expression evaluate(Environment env) {
             return this;
         }
     }
+
+    private static class IntBuiltinFunction extends CurriedBuiltinFunction {
+        private final IntOperator operator;
+
+        public IntBuiltinFunction(IntOperator operator) {
+            super(2, 2, List.of(), args -> operator.apply(args.getFirst(), args.get(1)));
+            this.operator = operator;
+        }
+
+        @Override
+        public IntOperator getIntOperator() {
+            return operator;
+        }
+    }
+
+    private static class SelectorBuiltinFunction extends CurriedBuiltinFunction {
+        private final Function<Cons, Expression> field;
+
+        public SelectorBuiltinFunction(Function<Cons, Expression> field, Function<List<Expression>, Expression> op) {
+            super(1, 1, List.of(), op);
+            this.field = field;
+        }
+
+        @Override
+        public Expression select(Expression list) {
+            return list instanceof Cons cons ? field.apply(cons) : null;
+        }
+
+        @Override
+        public boolean isSelector() {
+            return true;
+        }
+    }
 }
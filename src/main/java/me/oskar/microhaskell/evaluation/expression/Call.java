@@ -0,0 +1,113 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
+
+import java.util.Arrays;
+
+/**
+ * Application of a function of known arity to several arguments at once. A closure binds all arguments its lambda
+ * chain takes in a single frame through an {@link UncurriedEntry}; if the chain takes more arguments than given, the
+ * result is the closure of the remaining lambdas, and surplus arguments are applied to the result one by one.
+ * Arguments marked as strict are evaluated before the call instead of being delayed.
+ */
+public final class Call implements Expression {
+
+    private final Expression function;
+    private final Expression[] arguments;
+    private final boolean[] strictness;
+
+    private UncurriedEntry cachedEntry = null;
+
+    public Call(Expression function, Expression[] arguments) {
+        this(function, arguments, new boolean[arguments.length]);
+    }
+
+    public Call(Expression function, Expression[] arguments, boolean[] strictness) {
+        this.function = function;
+        this.arguments = arguments;
+        this.strictness = strictness;
+    }
+
+    public Expression getFunction() {
+        return function;
+    }
+
+    public Expression[] getArguments() {
+        return arguments;
+    }
+
+    public boolean[] getStrictness() {
+        return strictness;
+    }
+
+    public boolean isStrict(int index) {
+        return strictness[index];
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        var delayedArguments = new Expression[arguments.length];
+        for (var i = 0; i < arguments.length; i++) {
+            delayedArguments[i] = strictness[i] ? arguments[i].evaluate(env) : Thunk.delay(arguments[i], env);
+        }
+
+        return apply(function.evaluate(env), delayedArguments);
+    }
+
+    /**
+     * Applies the callee to the arguments. Every argument is cleared in the array once it is passed on, so the array
+     * doesn't keep e.g. a list alive while the callee walks it.
+     */
+    public Expression apply(Expression callee, Expression[] arguments) {
+        var first = 0;
+
+        while (first < arguments.length) {
+            var remaining = arguments.length - first;
+
+            if (callee instanceof Closure(Lambda lambda, Expression[] captured)) {
+                var entry = entryFor(lambda, remaining);
+                Budget.tick();
+                var frame = entry.frame(captured, arguments, first);
+                Arrays.fill(arguments, first, first + entry.arity(), null);
+                first += entry.arity();
+                callee = entry.body().evaluate(frame);
+            } else if (callee instanceof BuiltinFunction bf && !bf.isPartiallyApplied() && bf.getArity() <= remaining) {
+                callee = bf.applySaturated(take(arguments, first, bf.getArity()));
+                first += bf.getArity();
+            } else {
+                callee = Application.apply(callee, take(arguments, first, 1)[0]);
+                first++;
+            }
+        }
+
+        return callee;
+    }
+
+    private static Expression[] take(Expression[] arguments, int first, int count) {
+        var taken = Arrays.copyOfRange(arguments, first, first + count);
+        Arrays.fill(arguments, first, first + count, null);
+
+        return taken;
+    }
+
+    public UncurriedEntry entryFor(Lambda lambda, int argumentCount) {
+        var entry = cachedEntry;
+        if (entry == null || !entry.matches(lambda, argumentCount)) {
+            entry = UncurriedEntry.of(lambda, argumentCount);
+            cachedEntry = entry;
+        }
+
+        return entry;
+    }
+
+    @Override
+    public String toString() {
+        var s = function.toString();
+        for (var a : arguments) {
+            s = "(%s %s)".formatted(s, a);
+        }
+
+        return s;
+    }
+}
@@ -1,11 +1,11 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Environment;
 
-public record Closure(Lambda lambda, Map<String, Expression> env) implements Expression {
+public record Closure(Lambda lambda, Expression[] captured) implements Expression {
 
     @Override
-    public Expression evaluate(Map<String, Expression> env) {
+    public Expression evaluate(Environment env) {
         return this;
     }
 
@@ -0,0 +1,37 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * Cell of a list. Head and tail are stored as they are passed to {@code cons} and are only evaluated once a builtin
+ * like {@code head} or {@code tail} hands them out, so lists can be built lazily and infinitely.
+ */
+public record Cons(Expression head, Expression tail) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        var builder = new StringBuilder("[");
+
+        Expression list = this;
+        while (evaluated(list) instanceof Cons(Expression head, Expression tail)) {
+            if (list != this) builder.append(", ");
+            builder.append(evaluated(head) instanceof Thunk ? "_" : evaluated(head));
+            list = tail;
+        }
+
+        if (!(evaluated(list) instanceof Nil)) builder.append(", ..");
+
+        return builder.append("]").toString();
+    }
+
+    private static Expression evaluated(Expression expression) {
+        if (expression instanceof Thunk thunk && thunk.isEvaluated()) return thunk.getValue();
+
+        return expression;
+    }
+}
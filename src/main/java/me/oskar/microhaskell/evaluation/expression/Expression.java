@@ -1,7 +1,17 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Environment;
 
 public interface Expression {
-    Expression evaluate(Map<String, Expression> env);
-}
\ No newline at end of file
+    Expression evaluate(Environment env);
+
+    /**
+     * Evaluates an integer expression to its raw value. Expressions that compute an integer themselves override this
+     * to skip boxing the result into an {@link IntLiteral}.
+     *
+     * @throws IntegerOverflow if the value does not fit into a long
+     */
+    default long evaluateLong(Environment env) {
+        return IntOperator.unbox(evaluate(env));
+    }
+}
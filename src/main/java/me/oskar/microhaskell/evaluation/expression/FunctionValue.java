@@ -0,0 +1,14 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+/**
+ * Function in the representation of an evaluator that does not use {@link Closure}s, e.g. a partial application in
+ * the graph reducer. Builtins that take functions as arguments apply them through
+ * {@link Application#apply(Expression, Expression)}, which hands these over to the evaluator they belong to.
+ */
+public interface FunctionValue extends Expression {
+
+    /**
+     * Applies the function to the argument and evaluates the result to weak head normal form.
+     */
+    Expression apply(Expression argument);
+}
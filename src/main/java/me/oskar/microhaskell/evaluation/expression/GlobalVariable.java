@@ -0,0 +1,16 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+public record GlobalVariable(String name, Expression value) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return value.evaluate(env);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
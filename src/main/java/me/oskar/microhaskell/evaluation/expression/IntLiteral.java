@@ -1,16 +1,60 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Environment;
 
-public record IntLiteral(int value) implements Expression {
+import java.math.BigInteger;
+
+/**
+ * Integer that fits into a long. Larger integers are represented by {@link BigIntLiteral}; every integer that fits is
+ * always an {@code IntLiteral}, so the arithmetic can stay on longs until one of them overflows.
+ */
+public record IntLiteral(long value) implements Expression {
+
+    private static final int CACHE_LOW = -128;
+    private static final int CACHE_HIGH = 1024;
+    private static final IntLiteral[] CACHE = new IntLiteral[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (var i = 0; i < CACHE.length; i++) {
+            CACHE[i] = new IntLiteral(CACHE_LOW + i);
+        }
+    }
+
+    public static final IntLiteral FALSE = of(0);
+    public static final IntLiteral TRUE = of(1);
+
+    /**
+     * Returns the literal for the given value, sharing one instance for every value between {@value #CACHE_LOW} and
+     * {@value #CACHE_HIGH}, which includes the booleans returned by the comparison builtins.
+     */
+    public static IntLiteral of(long value) {
+        if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+            return CACHE[(int) value - CACHE_LOW];
+        }
+
+        return new IntLiteral(value);
+    }
+
+    public static IntLiteral of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    public static Expression of(BigInteger value) {
+        return value.bitLength() < Long.SIZE ? of(value.longValue()) : new BigIntLiteral(value);
+    }
 
     @Override
-    public Expression evaluate(Map<String, Expression> env) {
+    public Expression evaluate(Environment env) {
         return this;
     }
 
+    @Override
+    public long evaluateLong(Environment env) {
+        return value;
+    }
+
     @Override
     public String toString() {
-        return Integer.toString(value);
+        return Long.toString(value);
     }
 }
@@ -0,0 +1,90 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import java.math.BigInteger;
+import java.util.function.BinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Binary operation on integers. It is computed on longs with an exact operation that throws on overflow, and only then
+ * repeated on {@link BigInteger}s. A division by zero is not an overflow, so it fails before either is tried.
+ */
+public final class IntOperator {
+
+    private final LongBinaryOperator exact;
+    private final BinaryOperator<BigInteger> big;
+    private final boolean division;
+
+    private IntOperator(LongBinaryOperator exact, BinaryOperator<BigInteger> big, boolean division) {
+        this.exact = exact;
+        this.big = big;
+        this.division = division;
+    }
+
+    public static IntOperator of(LongBinaryOperator exact, BinaryOperator<BigInteger> big) {
+        return new IntOperator(exact, big, false);
+    }
+
+    /**
+     * Operation whose right operand is a divisor, which fails with {@code / by zero} if it is 0.
+     */
+    public static IntOperator division(LongBinaryOperator exact, BinaryOperator<BigInteger> big) {
+        return new IntOperator(exact, big, true);
+    }
+
+    /**
+     * Comparison that evaluates to 1 if the result of comparing its operands satisfies the predicate, else to 0.
+     */
+    public static IntOperator comparison(IntPredicate predicate) {
+        return new IntOperator((a, b) -> predicate.test(Long.compare(a, b)) ? 1 : 0,
+                (a, b) -> predicate.test(a.compareTo(b)) ? BigInteger.ONE : BigInteger.ZERO, false);
+    }
+
+    /**
+     * @throws IntegerOverflow if the result does not fit into a long
+     */
+    public long applyAsLong(long left, long right) {
+        if (division && right == 0) throw new ArithmeticException("/ by zero");
+
+        try {
+            return exact.applyAsLong(left, right);
+        } catch (ArithmeticException e) {
+            return unbox(applyBig(BigInteger.valueOf(left), BigInteger.valueOf(right)));
+        }
+    }
+
+    public Expression apply(Expression left, Expression right) {
+        if (division && right instanceof IntLiteral(long r) && r == 0) throw new ArithmeticException("/ by zero");
+
+        if (left instanceof IntLiteral(long l) && right instanceof IntLiteral(long r)) {
+            try {
+                return IntLiteral.of(exact.applyAsLong(l, r));
+            } catch (ArithmeticException e) {
+                // Overflowed, computed again below
+            }
+        }
+
+        return applyBig(toBigInteger(left), toBigInteger(right));
+    }
+
+    /**
+     * @throws IntegerOverflow if the result does not fit into a long
+     */
+    public static long unbox(Expression value) {
+        if (value instanceof BigIntLiteral big) throw new IntegerOverflow(big);
+
+        return ((IntLiteral) value).value();
+    }
+
+    private Expression applyBig(BigInteger left, BigInteger right) {
+        return IntLiteral.of(big.apply(left, right));
+    }
+
+    private static BigInteger toBigInteger(Expression value) {
+        return switch (value) {
+            case IntLiteral(long v) -> BigInteger.valueOf(v);
+            case BigIntLiteral(BigInteger v) -> v;
+            default -> throw new RuntimeException("Not an integer: %s".formatted(value));
+        };
+    }
+}
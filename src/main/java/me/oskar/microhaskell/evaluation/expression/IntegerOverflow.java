@@ -0,0 +1,25 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+/**
+ * Thrown by {@link Expression#evaluateLong} when the value does not fit into a long. Carries the value, so the caller
+ * can continue on {@link java.math.BigInteger}s without evaluating anything twice.
+ */
+public class IntegerOverflow extends ArithmeticException {
+
+    private final BigIntLiteral value;
+
+    public IntegerOverflow(BigIntLiteral value) {
+        super("Integer does not fit into a long");
+
+        this.value = value;
+    }
+
+    public BigIntLiteral getValue() {
+        return value;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
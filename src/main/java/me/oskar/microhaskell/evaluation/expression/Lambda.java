@@ -1,13 +1,23 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.HashMap;
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Environment;
 
-public record Lambda(String parameter, Expression body) implements Expression {
+public record Lambda(String parameter, Expression body, int[] captures) implements Expression {
+
+    private static final int[] NO_CAPTURES = new int[0];
+
+    public Lambda(String parameter, Expression body) {
+        this(parameter, body, NO_CAPTURES);
+    }
 
     @Override
-    public Expression evaluate(Map<String, Expression> env) {
-        return new Closure(this, new HashMap<>(env));
+    public Expression evaluate(Environment env) {
+        var captured = new Expression[captures.length];
+        for (var i = 0; i < captures.length; i++) {
+            captured[i] = env.lookup(captures[i]);
+        }
+
+        return new Closure(this, captured);
     }
 
     @Override
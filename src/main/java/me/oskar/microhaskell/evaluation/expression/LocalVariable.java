@@ -0,0 +1,16 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+public record LocalVariable(String name, int slot) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return env.lookup(slot).evaluate(env);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,41 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * Innermost body of a function that calls itself in tail position. Every {@link SelfTailCall} in the body evaluates
+ * to a {@link Jump} carrying the frame of the next iteration, so the body is evaluated again in that frame instead of
+ * the function being entered once more.
+ */
+public record Loop(Expression body) implements Expression {
+
+    /**
+     * Result of a self tail call, only ever returned to the enclosing loop.
+     */
+    public record Jump(Environment frame) implements Expression {
+
+        @Override
+        public Expression evaluate(Environment env) {
+            throw new IllegalStateException("Self tail call outside of its loop");
+        }
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        var frame = env;
+
+        while (true) {
+            Budget.tick();
+            var result = body.evaluate(frame);
+            if (!(result instanceof Jump(Environment next))) return result;
+
+            frame = next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(loop %s)".formatted(body);
+    }
+}
@@ -0,0 +1,21 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * The empty list.
+ */
+public record Nil() implements Expression {
+
+    public static final Nil NIL = new Nil();
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "[]";
+    }
+}
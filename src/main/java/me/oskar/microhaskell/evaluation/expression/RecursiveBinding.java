@@ -0,0 +1,35 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * Binds {@code name} to the value of {@code body} within {@code body} itself. The body is evaluated in a frame whose
+ * argument slot is a thunk of the body, so a recursive function refers directly to its own closure.
+ */
+public record RecursiveBinding(String name, Expression body, int[] captures) implements Expression {
+
+    private static final int[] NO_CAPTURES = new int[0];
+
+    public RecursiveBinding(String name, Expression body) {
+        this(name, body, NO_CAPTURES);
+    }
+
+    public Thunk bind(Environment env) {
+        var captured = new Expression[captures.length];
+        for (var i = 0; i < captures.length; i++) {
+            captured[i] = env.lookup(captures[i]);
+        }
+
+        return Thunk.recursive(body, captured);
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return bind(env).force();
+    }
+
+    @Override
+    public String toString() {
+        return "(fix %s. %s)".formatted(name, body);
+    }
+}
@@ -0,0 +1,56 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Binds a group of mutually recursive functions and evaluates to the selected one. The members are bound in a shared
+ * group frame whose slots {@code 1..n} hold the members and whose remaining slots hold the {@code captures} of the
+ * group; the captures of every member are slots of that frame.
+ */
+public record RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) implements Expression {
+
+    private static final int[] NO_CAPTURES = new int[0];
+
+    public RecursiveGroup(RecursiveBinding[] members, int selected) {
+        this(members, selected, NO_CAPTURES);
+    }
+
+    public Thunk bind(Environment env) {
+        var groupCaptured = new Expression[members.length + captures.length];
+        for (var i = 0; i < captures.length; i++) {
+            groupCaptured[members.length + i] = env.lookup(captures[i]);
+        }
+
+        var memberCaptured = new Expression[members.length][];
+        for (var i = 0; i < members.length; i++) {
+            memberCaptured[i] = new Expression[members[i].captures().length];
+            groupCaptured[i] = Thunk.recursive(members[i].body(), memberCaptured[i]);
+        }
+
+        var groupEnv = new Environment(null, groupCaptured);
+        for (var i = 0; i < members.length; i++) {
+            var memberCaptures = members[i].captures();
+            for (var j = 0; j < memberCaptures.length; j++) {
+                memberCaptured[i][j] = groupEnv.lookup(memberCaptures[j]);
+            }
+        }
+
+        return (Thunk) groupCaptured[selected];
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return bind(env).force();
+    }
+
+    @Override
+    public String toString() {
+        return "(letrec %s in %s)".formatted(
+                Stream.of(members).map(m -> "%s = %s".formatted(m.name(), m.body()))
+                        .collect(Collectors.joining("; ")),
+                members[selected].name());
+    }
+}
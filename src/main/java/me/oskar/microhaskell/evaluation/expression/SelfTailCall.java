@@ -0,0 +1,39 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * Saturated call of a function to itself in tail position of its {@link Loop}. Instead of entering the function, the
+ * frame of the loop is copied with the parameters rebound to the new arguments. {@code slots} holds the slot of every
+ * parameter in that frame, or -1 if the body never reads the parameter, in which case its argument is dropped.
+ * Evaluators without loop support evaluate {@code call} instead.
+ */
+public record SelfTailCall(Call call, String[] parameters, int[] slots) implements Expression {
+
+    public SelfTailCall(Call call, String[] parameters) {
+        this(call, parameters, new int[parameters.length]);
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        var arguments = call.getArguments();
+
+        var values = new Expression[arguments.length];
+        for (var i = 0; i < arguments.length; i++) {
+            if (slots[i] < 0) continue;
+
+            values[i] = call.isStrict(i) ? arguments[i].evaluate(env) : Thunk.delay(arguments[i], env);
+        }
+
+        return new Loop.Jump(rebind(env, values));
+    }
+
+    public Environment rebind(Environment frame, Expression[] values) {
+        return frame.update(slots, values);
+    }
+
+    @Override
+    public String toString() {
+        return "(goto %s)".formatted(call);
+    }
+}
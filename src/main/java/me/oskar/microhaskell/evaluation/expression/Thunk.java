@@ -1,23 +1,302 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delayed evaluation of an expression in an environment. While the thunk is being evaluated it is a black hole: it
+ * no longer references its expression and environment, so they can be collected as soon as the evaluation no longer
+ * needs them, and entering it again means that its value depends on itself. Once evaluated, only the value is kept.
+ * <p>
+ * Thunks may be forced by several threads, e.g. when a spark is evaluated in the background. The thread that wins a
+ * CAS on the owner claims the thunk and evaluates it, every other thread that enters the black hole waits until the
+ * owner has set the value. A thread that enters a black hole it owns itself has found a {@code <<loop>>}, a loop
+ * through black holes owned by different threads is not detected and waits forever.
+ * <p>
+ * A delayed selection like {@code head xs} is a selector thunk: it refers to the list instead of the environment, and
+ * once the list has been evaluated it only refers to the selected field, see {@link #select(BuiltinFunction,
+ * Expression)}. Otherwise the thunk of {@code head xs} would keep the whole list alive until it is demanded.
+ */
 public class Thunk implements Expression {
 
-    private final Expression expression;
-    private final Map<String, Expression> env;
+    private static final VarHandle OWNER;
+    private static final VarHandle VALUE;
+    private static final VarHandle SELECTIONS;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            OWNER = lookup.findVarHandle(Thunk.class, "owner", Thread.class);
+            VALUE = lookup.findVarHandle(Thunk.class, "value", Expression.class);
+            SELECTIONS = lookup.findVarHandle(Thunk.class, "selections", Selection.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * A selector thunk waiting for this thunk to be evaluated, and the ones that registered before it.
+     */
+    private record Selection(Thunk thunk, BuiltinFunction selector, Selection next) {
+    }
+
+    private static final int SPINS_BEFORE_PARKING = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private Expression expression;
+    private Environment env;
+    @SuppressWarnings("unused") // Accessed through OWNER
+    private Thread owner = null;
+    @SuppressWarnings("unused") // Accessed through VALUE
     private Expression value = null;
+    @SuppressWarnings("unused") // Accessed through SELECTIONS
+    private Selection selections = null;
 
-    public Thunk(Expression expression, Map<String, Expression> env) {
+    public Thunk(Expression expression, Environment env) {
         this.expression = expression;
         this.env = env;
     }
-    
-    @Override
-    public Expression evaluate(Map<String, Expression> outerEnv) {
-        if (value == null) {
-            value = expression.evaluate(env);
+
+    private Thunk(Expression expression, Expression[] captured) {
+        this.expression = expression;
+        this.env = new Environment(this, captured);
+    }
+
+    /**
+     * Creates a thunk that is evaluated in a frame whose argument is the thunk itself.
+     */
+    public static Thunk recursive(Expression expression, Expression[] captured) {
+        return new Thunk(expression, captured);
+    }
+
+    /**
+     * Delays the evaluation of an expression. Expressions that are already values or only refer to another delayed
+     * value are not wrapped, so no chains of thunks pointing to thunks are built.
+     */
+    public static Expression delay(Expression expression, Environment env) {
+        return switch (expression) {
+            case LocalVariable(String ignored, int slot) -> env.lookup(slot);
+            case Thunk thunk -> thunk;
+            case IntLiteral literal -> literal;
+            case BigIntLiteral literal -> literal;
+            case Cons cons -> cons;
+            case Nil nil -> nil;
+            case GlobalVariable(String ignored, Expression value)
+                    when value instanceof BuiltinFunction || value instanceof Nil -> value;
+            case Application(GlobalVariable(String ignored, BuiltinFunction selector), Expression argument)
+                    when selector.isSelector() -> select(selector, delay(argument, env));
+            case Lambda lambda -> lambda.evaluate(env);
+            default -> new Thunk(expression, env);
+        };
+    }
+
+    /**
+     * Delays the application of a selector like {@code head} to a delayed list. The field is selected right away if
+     * the list is evaluated already, otherwise as soon as it is, which is what the garbage collector of GHC does for
+     * selector thunks.
+     */
+    public static Expression select(BuiltinFunction selector, Expression list) {
+        var value = list instanceof Thunk thunk ? thunk.getValue() : list;
+        var field = value == null ? null : selector.select(value);
+        if (field != null) return field;
+
+        var selection = new Thunk(new Application(selector, list), Environment.EMPTY);
+        if (value == null) ((Thunk) list).addSelection(selection, selector);
+
+        return selection;
+    }
+
+    /**
+     * The expression of a thunk the current thread has {@link #claim() claimed}.
+     */
+    public Expression getExpression() {
+        return expression;
+    }
+
+    /**
+     * The environment of a thunk the current thread has {@link #claim() claimed}.
+     */
+    public Environment getEnvironment() {
+        return env;
+    }
+
+    public boolean isEvaluated() {
+        return VALUE.getAcquire(this) != null;
+    }
+
+    public Expression getValue() {
+        return (Expression) VALUE.getAcquire(this);
+    }
+
+    /**
+     * Sets the value of a thunk the current thread has {@link #claim() claimed}, which ends the wait of every other
+     * thread that entered it.
+     */
+    public void setValue(Expression value) {
+        VALUE.setRelease(this, value);
+        OWNER.setRelease(this, null);
+
+        // A selection added by another thread at the same time may be missed, which only leaves it unresolved until
+        // it is demanded
+        if (SELECTIONS.getAcquire(this) != null) resolveSelections(value);
+    }
+
+    private void addSelection(Thunk selection, BuiltinFunction selector) {
+        Selection current;
+        do {
+            current = (Selection) SELECTIONS.getAcquire(this);
+        } while (!SELECTIONS.compareAndSet(this, current, new Selection(selection, selector, current)));
+
+        if (isEvaluated()) resolveSelections(getValue());
+    }
+
+    private void resolveSelections(Expression value) {
+        for (var s = (Selection) SELECTIONS.getAndSet(this, null); s != null; s = s.next()) {
+            s.thunk().resolveSelection(s.selector().select(value));
+        }
+    }
+
+    /**
+     * Replaces the application of a selector thunk by the field it selects, unless the thunk is being evaluated
+     * already. An unevaluated field is kept as the expression of the thunk, so only the field stays alive.
+     */
+    private void resolveSelection(Expression field) {
+        if (field == null || !OWNER.compareAndSet(this, null, Thread.currentThread())) return;
+
+        if (isEvaluated()) {
+            OWNER.setRelease(this, null);
+        } else if (field instanceof Thunk thunk && thunk.isEvaluated()) {
+            expression = null;
+            env = null;
+            setValue(thunk.getValue());
+        } else {
+            expression = field;
+            env = Environment.EMPTY;
+            OWNER.setRelease(this, null);
+        }
+    }
+
+    /**
+     * Claims the thunk for evaluation by the current thread, who then has to {@link #blackhole()} it and
+     * {@link #setValue(Expression) set} its value. If another thread is evaluating the thunk, waits until it is done.
+     *
+     * @return whether the thunk was claimed, or {@code false} if it has been evaluated in the meantime
+     */
+    public boolean claim() {
+        var current = Thread.currentThread();
+        var parkNanos = MIN_PARK_NANOS;
+
+        for (var spins = 0; ; spins++) {
+            if (isEvaluated()) return false;
+
+            var owner = (Thread) OWNER.compareAndExchange(this, null, current);
+            if (owner == null) {
+                if (!isEvaluated()) return true;
+
+                // Evaluated between the check and the claim
+                OWNER.setRelease(this, null);
+                return false;
+            }
+
+            if (owner == current) throw new RuntimeException("<<loop>>");
+
+            // Values are not handed over, so waiting threads poll and back off the longer the owner takes
+            if (spins < SPINS_BEFORE_PARKING) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(this, parkNanos);
+                parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+            }
         }
-        return value;
     }
-}
\ No newline at end of file
+
+    /**
+     * Turns the thunk the current thread has {@link #claim() claimed} into a black hole.
+     */
+    public void blackhole() {
+        if (expression == null) {
+            // The evaluation of a thunk that was abandoned without restoring it, see abandon()
+            OWNER.setRelease(this, null);
+            throw new RuntimeException("<<loop>>");
+        }
+
+        expression = null;
+        env = null;
+    }
+
+    /**
+     * Gives up a black hole the current thread has claimed without setting its value, e.g. because its evaluation
+     * failed. Threads that are waiting for it then try to claim it themselves.
+     */
+    public void abandon() {
+        OWNER.setRelease(this, null);
+    }
+
+    /**
+     * Gives up a black hole like {@link #abandon()}, but restores the expression and environment it was entered with
+     * first, so forcing it again, e.g. after a deoptimization or from a thread that was waiting for it, evaluates it
+     * again and fails with the same error instead of a {@code <<loop>>}.
+     */
+    public void abandon(Expression expression, Environment env) {
+        this.expression = expression;
+        this.env = env;
+        abandon();
+    }
+
+    public Expression force() {
+        var v = getValue();
+        if (v != null) return v;
+
+        if (!claim()) return getValue();
+
+        return evaluateClaimed();
+    }
+
+    /**
+     * Evaluates the thunk unless it is already evaluated or being evaluated by someone else. Unlike
+     * {@link #force()}, never waits for another thread.
+     *
+     * @return whether the thunk was evaluated by this call
+     */
+    public boolean forceIfUnclaimed() {
+        if (isEvaluated() || !OWNER.compareAndSet(this, null, Thread.currentThread())) return false;
+
+        if (isEvaluated()) {
+            OWNER.setRelease(this, null);
+            return false;
+        }
+
+        evaluateClaimed();
+        return true;
+    }
+
+    private Expression evaluateClaimed() {
+        var suspended = expression;
+        var suspendedEnv = env;
+        blackhole();
+
+        Expression result;
+        try {
+            Budget.tick();
+            result = suspended.evaluate(suspendedEnv);
+        } catch (Throwable t) {
+            // The thunk may be forced again, e.g. after a deoptimization, so the error must not look like a loop
+            abandon(suspended, suspendedEnv);
+            throw t;
+        }
+
+        setValue(result);
+        return result;
+    }
+
+    @Override
+    public Expression evaluate(Environment outerEnv) {
+        return force();
+    }
+}
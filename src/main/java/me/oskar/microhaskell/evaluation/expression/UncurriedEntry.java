@@ -0,0 +1,54 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.evaluation.Environment;
+
+/**
+ * Enters a chain of curried lambdas with up to {@code argumentCount} arguments at once. The frame of the innermost
+ * lambda taken is built directly from the values captured by the outermost closure and the arguments, so no closure
+ * is created for the lambdas in between. Every source is either an index into the captured values of the closure or,
+ * if negative, {@code -(i + 1)} for the {@code i}-th argument.
+ */
+public record UncurriedEntry(Lambda lambda, int argumentCount, int arity, Expression body, int[] sources) {
+
+    public static UncurriedEntry of(Lambda lambda, int argumentCount) {
+        var sources = new int[lambda.captures().length];
+        for (var i = 0; i < sources.length; i++) {
+            sources[i] = i;
+        }
+
+        var current = lambda;
+        var arity = 1;
+        while (arity < argumentCount && current.body() instanceof Lambda next) {
+            var nextSources = new int[next.captures().length];
+            for (var i = 0; i < nextSources.length; i++) {
+                var slot = next.captures()[i];
+                nextSources[i] = slot == 0 ? -arity : sources[slot - 1];
+            }
+
+            sources = nextSources;
+            current = next;
+            arity++;
+        }
+
+        return new UncurriedEntry(lambda, argumentCount, arity, current.body(), sources);
+    }
+
+    public boolean matches(Lambda lambda, int argumentCount) {
+        return this.lambda == lambda && this.argumentCount == argumentCount;
+    }
+
+    public Environment frame(Expression[] captured, Expression[] arguments, int first) {
+        var argument = arguments[first + arity - 1];
+        if (arity == 1) {
+            return new Environment(argument, captured);
+        }
+
+        var frameCaptured = new Expression[sources.length];
+        for (var i = 0; i < sources.length; i++) {
+            var source = sources[i];
+            frameCaptured[i] = source >= 0 ? captured[source] : arguments[first - source - 1];
+        }
+
+        return new Environment(argument, frameCaptured);
+    }
+}
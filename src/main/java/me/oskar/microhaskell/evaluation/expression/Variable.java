@@ -1,20 +1,16 @@
 package me.oskar.microhaskell.evaluation.expression;
 
-import java.util.Map;
+import me.oskar.microhaskell.evaluation.Environment;
 
 public record Variable(String name) implements Expression {
 
     @Override
-    public Expression evaluate(Map<String, Expression> env) {
-        var value = env.get(name);
-        if (value == null) {
-            throw new RuntimeException("Unbound variable: %s".formatted(name));
-        }
-        return value.evaluate(env);
+    public Expression evaluate(Environment env) {
+        throw new RuntimeException("Unresolved variable: %s".formatted(name));
     }
 
     @Override
     public String toString() {
         return name;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,169 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class GraphNode {
+
+    enum Kind {
+        APPLICATION, COMBINATOR, VALUE, INDIRECTION
+    }
+
+    private Kind kind;
+    private GraphNode function;
+    private GraphNode argument;
+    private int combinator;
+    private Expression value;
+    private boolean underEvaluation = false;
+    // Whether the argument of this application is reduced before the function is entered, see Template.StrictApply
+    private boolean strictArgument = false;
+    // Applications of selectors like head to this node, which are resolved once it is evaluated
+    private List<GraphNode> selections = null;
+
+    private GraphNode() {
+    }
+
+    static GraphNode application(GraphNode function, GraphNode argument) {
+        var node = new GraphNode();
+        node.becomeApplication(function, argument);
+        return node;
+    }
+
+    static GraphNode strictApplication(GraphNode function, GraphNode argument) {
+        var node = new GraphNode();
+        node.becomeApplication(function, argument, true);
+        return node;
+    }
+
+    static GraphNode placeholder() {
+        return new GraphNode();
+    }
+
+    static GraphNode fixedPoint(GraphNode function) {
+        var node = new GraphNode();
+        node.becomeApplication(function, node);
+        return node;
+    }
+
+    static GraphNode combinator(int combinator) {
+        var node = new GraphNode();
+        node.becomeCombinator(combinator);
+        return node;
+    }
+
+    static GraphNode value(Expression value) {
+        var node = new GraphNode();
+        node.becomeValue(value);
+        return node;
+    }
+
+    void becomeApplication(GraphNode function, GraphNode argument) {
+        becomeApplication(function, argument, false);
+    }
+
+    void becomeApplication(GraphNode function, GraphNode argument, boolean strictArgument) {
+        this.kind = Kind.APPLICATION;
+        this.function = function;
+        this.argument = argument;
+        this.strictArgument = strictArgument;
+        this.value = null;
+    }
+
+    void becomeCombinator(int combinator) {
+        this.kind = Kind.COMBINATOR;
+        this.combinator = combinator;
+        this.function = null;
+        this.argument = null;
+        this.value = null;
+    }
+
+    void becomeValue(Expression value) {
+        this.kind = Kind.VALUE;
+        this.value = value;
+        this.function = null;
+        this.argument = null;
+    }
+
+    void becomeIndirection(GraphNode target) {
+        // A node that is its own value would send follow() around in circles
+        if (target.follow() == this) throw new RuntimeException("<<loop>>");
+
+        this.kind = Kind.INDIRECTION;
+        this.function = target;
+        this.argument = null;
+        this.value = null;
+    }
+
+    /**
+     * The node at the end of the chain of indirections starting at this node. The chain is shortened on the way, so
+     * e.g. a loop whose every step leaves an indirection to the next one behind doesn't keep all of its steps alive.
+     */
+    GraphNode follow() {
+        var node = this;
+        while (node.kind == Kind.INDIRECTION) {
+            node = node.function;
+        }
+
+        var current = this;
+        while (current.kind == Kind.INDIRECTION && current.function != node) {
+            var next = current.function;
+            current.function = node;
+            current = next;
+        }
+
+        return node;
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    GraphNode getFunction() {
+        return function;
+    }
+
+    GraphNode getArgument() {
+        return argument;
+    }
+
+    int getCombinator() {
+        return combinator;
+    }
+
+    Expression getValue() {
+        return value;
+    }
+
+    void addSelection(GraphNode selection) {
+        if (selections == null) selections = new ArrayList<>(1);
+        selections.add(selection);
+    }
+
+    List<GraphNode> takeSelections() {
+        var taken = selections;
+        selections = null;
+
+        return taken == null ? List.of() : taken;
+    }
+
+    boolean hasStrictArgument() {
+        return kind == Kind.APPLICATION && strictArgument;
+    }
+
+    /**
+     * Marks the argument as reduced, it stays in weak head normal form since nodes are updated in place.
+     */
+    void clearStrictArgument() {
+        strictArgument = false;
+    }
+
+    boolean isUnderEvaluation() {
+        return underEvaluation;
+    }
+
+    void setUnderEvaluation(boolean underEvaluation) {
+        this.underEvaluation = underEvaluation;
+    }
+}
@@ -0,0 +1,393 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Evaluator;
+import me.oskar.microhaskell.evaluation.expression.Application;
+import me.oskar.microhaskell.evaluation.expression.BuiltinFunction;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.Thunk;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Graph reduction backend. The IR is lambda-lifted into supercombinators, which are reduced by unwinding the spine of
+ * the graph. The body of a combinator is instantiated directly into the root of its redex, so every shared
+ * reference to that redex sees the reduced result.
+ */
+public class GraphReducer implements Evaluator {
+
+    private Map<String, Long> statistics = Map.of();
+
+    @Override
+    public Expression evaluate(Expression program) {
+        var lifter = new LambdaLifter();
+        var main = lifter.lift(program);
+
+        var execution = new Execution(lifter.getCombinators());
+        var result = execution.toExpression(execution.reduce(execution.instantiate(main, new GraphNode[0])));
+
+        statistics = execution.statistics();
+
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getStatistics() {
+        return statistics;
+    }
+
+    static final class Execution {
+
+        private final List<Supercombinator> combinators;
+        private long reductions = 0;
+        private long builtinReductions = 0;
+        private long updates = 0;
+        private long allocatedNodes = 0;
+
+        private Execution(List<Supercombinator> combinators) {
+            this.combinators = combinators;
+        }
+
+        /**
+         * A reduction to weak head normal form that is in progress, with the spine of its graph and, while the strict
+         * arguments of a builtin redex are reduced, that redex.
+         */
+        private static final class Frame {
+
+            private final GraphNode root;
+            private final GraphNode start;
+            private final List<GraphNode> spine = new ArrayList<>();
+            private GraphNode node;
+
+            private BuiltinFunction builtin;
+            private GraphNode redex;
+            private GraphNode[] arguments;
+            private List<Expression> evaluatedArguments;
+
+            private Frame(GraphNode root, GraphNode start) {
+                this.root = root;
+                this.start = start;
+                this.node = root;
+            }
+        }
+
+        /**
+         * Reduces the graph to weak head normal form. The node being reduced is marked as a black hole, so a reduction
+         * that needs its own result fails with {@code <<loop>>} instead of recursing until the stack overflows.
+         * <p>
+         * The strict arguments of a builtin, and those a combinator is strict in, are reduced on an explicit stack of
+         * frames rather than by recursing, so e.g. a long chain of additions built up in a lazy accumulator doesn't
+         * overflow the Java stack.
+         */
+        GraphNode reduce(GraphNode root) {
+            var pending = new ArrayDeque<Frame>();
+            var frame = enter(root);
+
+            try {
+                while (true) {
+                    var argument = unwind(frame);
+                    if (argument != null) {
+                        pending.push(frame);
+                        frame = enter(argument);
+                        continue;
+                    }
+
+                    frame.start.setUnderEvaluation(false);
+                    var whnf = frame.root.follow();
+                    resolveSelections(frame.root, whnf);
+                    if (pending.isEmpty()) return whnf;
+
+                    frame = pending.pop();
+                    if (frame.builtin != null) frame.evaluatedArguments.add(toExpression(whnf));
+                }
+            } finally {
+                // Only left with frames when a reduction failed
+                frame.start.setUnderEvaluation(false);
+                for (var suspended : pending) {
+                    suspended.start.setUnderEvaluation(false);
+                }
+            }
+        }
+
+        private Frame enter(GraphNode root) {
+            var start = root.follow();
+            if (start.isUnderEvaluation()) throw new RuntimeException("<<loop>>");
+
+            start.setUnderEvaluation(true);
+            return new Frame(root, start);
+        }
+
+        /**
+         * Unwinds the spine of the frame until its root is in weak head normal form, in which case it returns null, or
+         * until a builtin or combinator needs a strict argument, which it returns to be reduced before the frame is
+         * resumed.
+         */
+        private GraphNode unwind(Frame frame) {
+            var spine = frame.spine;
+
+            while (true) {
+                if (frame.builtin != null) {
+                    var bf = frame.builtin;
+                    var i = frame.evaluatedArguments.size();
+                    if (i < bf.getStrictArguments()) return frame.arguments[i];
+
+                    for (; i < frame.arguments.length; i++) {
+                        frame.evaluatedArguments.add(new GraphReference(frame.arguments[i], this));
+                    }
+
+                    update(frame.redex, bf.applyFully(frame.evaluatedArguments));
+                    builtinReductions++;
+                    updates++;
+
+                    frame.root.follow();
+                    frame.node = frame.redex;
+                    frame.builtin = null;
+                    frame.redex = null;
+                    frame.arguments = null;
+                    frame.evaluatedArguments = null;
+                }
+
+                var node = frame.node.follow();
+                if (node != frame.start && node.isUnderEvaluation()) throw new RuntimeException("<<loop>>");
+
+                switch (node.getKind()) {
+                    case APPLICATION -> {
+                        spine.add(node);
+                        frame.node = node.getFunction();
+                    }
+                    case COMBINATOR -> {
+                        var combinator = combinators.get(node.getCombinator());
+                        if (spine.size() < combinator.arity()) return null;
+
+                        var strictArgument = takeStrictArgument(spine, combinator.arity());
+                        if (strictArgument != null) return strictArgument;
+
+                        var redex = spine.get(spine.size() - combinator.arity());
+                        instantiateInto(redex, combinator.body(), popArguments(spine, combinator.arity()));
+                        reductions++;
+                        Budget.tick();
+
+                        frame.node = redex;
+                    }
+                    case VALUE -> {
+                        // Builtins delay work in thunks, which are evaluated outside of the graph
+                        if (node.getValue() instanceof Thunk thunk) {
+                            var value = thunk.force();
+                            if (value instanceof GraphReference reference) {
+                                node.becomeIndirection(reference.getNode());
+                            } else {
+                                node.becomeValue(value);
+                            }
+                            frame.node = node;
+                            continue;
+                        }
+
+                        if (!(node.getValue() instanceof BuiltinFunction bf)) {
+                            if (!spine.isEmpty()) {
+                                throw new RuntimeException("Not a function: %s".formatted(node.getValue()));
+                            }
+                            return null;
+                        }
+                        if (spine.size() < bf.getArity()) return null;
+
+                        frame.builtin = bf;
+                        frame.redex = spine.get(spine.size() - bf.getArity());
+                        frame.arguments = popArguments(spine, bf.getArity());
+                        frame.evaluatedArguments = new ArrayList<>(bf.getArity());
+                    }
+                    case INDIRECTION -> throw new IllegalStateException("Unreachable");
+                }
+            }
+        }
+
+        /**
+         * The next strict argument among the applications a saturated combinator takes from the spine, which is then
+         * reduced before the combinator is instantiated and resumed afterwards.
+         */
+        private GraphNode takeStrictArgument(List<GraphNode> spine, int count) {
+            for (var i = spine.size() - 1; i >= spine.size() - count; i--) {
+                var application = spine.get(i);
+                if (application.hasStrictArgument()) {
+                    application.clearStrictArgument();
+                    return application.getArgument();
+                }
+            }
+
+            return null;
+        }
+
+        private GraphNode[] popArguments(List<GraphNode> spine, int count) {
+            var arguments = new GraphNode[count];
+            for (var i = 0; i < count; i++) {
+                arguments[i] = spine.removeLast().getArgument();
+            }
+
+            return arguments;
+        }
+
+        /**
+         * Overwrites the redex of a builtin with its result. An application is built into the redex instead of being
+         * referred to by an indirection, so a builtin that iterates, e.g. {@code sum}, doesn't leave a chain of
+         * indirections behind that grows with every step and is kept alive by the root.
+         */
+        private void update(GraphNode redex, Expression result) {
+            switch (result) {
+                case GraphReference reference -> redex.becomeIndirection(reference.getNode());
+                case Application(Expression function, Expression argument) ->
+                        redex.becomeApplication(toNode(function), toNode(argument));
+                default -> redex.becomeValue(result);
+            }
+        }
+
+        /**
+         * Turns the result of a builtin into a node. Applications of graph nodes, e.g. of the function passed to
+         * {@code foldr}, become application nodes, so they are reduced in the graph.
+         */
+        GraphNode toNode(Expression expression) {
+            return switch (expression) {
+                case GraphReference reference -> reference.getNode();
+                case Application(Expression function, Expression argument) -> {
+                    allocatedNodes++;
+                    yield GraphNode.application(toNode(function), toNode(argument));
+                }
+                default -> {
+                    allocatedNodes++;
+                    yield GraphNode.value(expression);
+                }
+            };
+        }
+
+        GraphNode instantiate(Template template, GraphNode[] arguments) {
+            return switch (template) {
+                case Template.Argument(int index) -> arguments[index];
+                case Template.Constant(Expression value) -> {
+                    allocatedNodes++;
+                    yield GraphNode.value(value);
+                }
+                case Template.CombinatorReference(int combinator) -> {
+                    allocatedNodes++;
+                    yield GraphNode.combinator(combinator);
+                }
+                case Template.Apply(Template function, Template argument) -> {
+                    allocatedNodes++;
+                    var application = GraphNode.application(instantiate(function, arguments),
+                            instantiate(argument, arguments));
+                    registerSelection(application);
+
+                    yield application;
+                }
+                case Template.StrictApply(Template function, Template argument) -> {
+                    allocatedNodes++;
+                    yield GraphNode.strictApplication(instantiate(function, arguments),
+                            instantiate(argument, arguments));
+                }
+                case Template.Fix(Template function) -> {
+                    allocatedNodes++;
+                    yield GraphNode.fixedPoint(instantiate(function, arguments));
+                }
+                case Template.Letrec(List<Template> bindings, int selected) -> {
+                    var extended = Arrays.copyOf(arguments, arguments.length + bindings.size());
+                    for (var i = 0; i < bindings.size(); i++) {
+                        extended[arguments.length + i] = GraphNode.placeholder();
+                    }
+                    for (var i = 0; i < bindings.size(); i++) {
+                        allocatedNodes++;
+                        build(extended[arguments.length + i], bindings.get(i), extended);
+                    }
+
+                    yield extended[arguments.length + selected];
+                }
+            };
+        }
+
+        private void instantiateInto(GraphNode redex, Template template, GraphNode[] arguments) {
+            build(redex, template, arguments);
+            updates++;
+        }
+
+        private void build(GraphNode node, Template template, GraphNode[] arguments) {
+            switch (template) {
+                case Template.Argument(int index) -> node.becomeIndirection(arguments[index]);
+                case Template.Constant(Expression value) -> node.becomeValue(value);
+                case Template.CombinatorReference(int combinator) -> node.becomeCombinator(combinator);
+                case Template.Apply(Template function, Template argument) -> {
+                    node.becomeApplication(instantiate(function, arguments), instantiate(argument, arguments));
+                    registerSelection(node);
+                }
+                case Template.StrictApply(Template function, Template argument) ->
+                        node.becomeApplication(instantiate(function, arguments), instantiate(argument, arguments), true);
+                case Template.Fix(Template function) -> node.becomeApplication(instantiate(function, arguments), node);
+                case Template.Letrec letrec -> node.becomeIndirection(instantiate(letrec, arguments));
+            }
+        }
+
+        /**
+         * Registers an application of a selector like {@code head} with the list it selects from, or resolves it if
+         * the list is evaluated already. A pending {@code head xs} then only keeps the first element alive once
+         * {@code xs} is evaluated, not the whole list that e.g. {@code length (tail xs)} walks through, like the
+         * selector thunks of the other evaluators.
+         */
+        private void registerSelection(GraphNode application) {
+            var function = application.getFunction().follow();
+            if (function.getKind() != GraphNode.Kind.VALUE || !(function.getValue() instanceof BuiltinFunction bf)
+                    || !bf.isSelector()) {
+                return;
+            }
+
+            var list = application.getArgument();
+            var whnf = list.follow();
+            if (whnf.getKind() == GraphNode.Kind.VALUE) {
+                resolveSelection(application, whnf);
+            } else {
+                list.addSelection(application);
+            }
+        }
+
+        /**
+         * Resolves the selections registered with the nodes from the root of a reduction to its weak head normal form.
+         */
+        private void resolveSelections(GraphNode root, GraphNode whnf) {
+            for (var node = root; ; node = node.getFunction()) {
+                for (var selection : node.takeSelections()) {
+                    resolveSelection(selection, whnf);
+                }
+
+                if (node.getKind() != GraphNode.Kind.INDIRECTION) return;
+            }
+        }
+
+        private void resolveSelection(GraphNode selection, GraphNode list) {
+            // The selection may have been reduced on its own already
+            if (selection.getKind() != GraphNode.Kind.APPLICATION || selection.getArgument().follow() != list) return;
+
+            var selector = (BuiltinFunction) selection.getFunction().follow().getValue();
+            var field = selector.select(list.getValue());
+            if (field != null) update(selection, field);
+        }
+
+        Expression toExpression(GraphNode node) {
+            var whnf = node.follow();
+            if (whnf.getKind() == GraphNode.Kind.VALUE) {
+                return whnf.getValue();
+            }
+
+            return new GraphReference(whnf, this);
+        }
+
+        private Map<String, Long> statistics() {
+            var statistics = new LinkedHashMap<String, Long>();
+            statistics.put("supercombinators", (long) combinators.size());
+            statistics.put("reductions", reductions);
+            statistics.put("builtin reductions", builtinReductions);
+            statistics.put("updates", updates);
+            statistics.put("allocated nodes", allocatedNodes);
+
+            return statistics;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.FunctionValue;
+
+/**
+ * Exposes a graph node to builtins, which operate on {@link Expression}s. Evaluating the reference reduces the node
+ * to weak head normal form, applying it builds an application node and reduces that.
+ */
+final class GraphReference implements FunctionValue {
+
+    private final GraphNode node;
+    private final GraphReducer.Execution execution;
+
+    GraphReference(GraphNode node, GraphReducer.Execution execution) {
+        this.node = node;
+        this.execution = execution;
+    }
+
+    GraphNode getNode() {
+        return node;
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return execution.toExpression(execution.reduce(node));
+    }
+
+    @Override
+    public Expression apply(Expression argument) {
+        return execution.toExpression(execution.reduce(GraphNode.application(node, execution.toNode(argument))));
+    }
+
+    @Override
+    public String toString() {
+        var whnf = node.follow();
+        if (whnf.getKind() == GraphNode.Kind.VALUE) {
+            return whnf.getValue().toString();
+        }
+
+        return "<partial application>";
+    }
+}
@@ -0,0 +1,102 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns resolved IR into supercombinators. Every lambda becomes a combinator that takes the values it captures
+ * followed by its parameter; the lambda itself is replaced by a partial application of that combinator to the
+ * captured values. A recursive binding is lifted the same way, with the binding itself as the parameter, and becomes a
+ * cyclic application of that combinator to its own node; a recursive group binds one such node per member.
+ * Structurally identical combinators, which are common because of inlined function bodies, are only
+ * generated once.
+ */
+final class LambdaLifter {
+
+    private final List<Supercombinator> combinators = new ArrayList<>();
+    private final Map<Supercombinator, Integer> combinatorIndices = new HashMap<>();
+
+    List<Supercombinator> getCombinators() {
+        return combinators;
+    }
+
+    Template lift(Expression expression) {
+        return lift(expression, new int[0], 0);
+    }
+
+    private Template lift(Expression expression, int[] slotArguments, int argumentCount) {
+        return switch (expression) {
+            case LocalVariable(String ignored, int slot) -> new Template.Argument(slotArguments[slot]);
+            case GlobalVariable(String ignored, Expression value) -> new Template.Constant(value);
+            case IntLiteral literal -> new Template.Constant(literal);
+            case BigIntLiteral literal -> new Template.Constant(literal);
+            case Cons cons -> new Template.Constant(cons);
+            case Nil nil -> new Template.Constant(nil);
+            case Application(Expression function, Expression argument) ->
+                    new Template.Apply(lift(function, slotArguments, argumentCount),
+                            lift(argument, slotArguments, argumentCount));
+            case Call call -> {
+                // Spine unwinding already binds all arguments of a combinator at once
+                var template = lift(call.getFunction(), slotArguments, argumentCount);
+                var arguments = call.getArguments();
+                for (var i = 0; i < arguments.length; i++) {
+                    var argument = lift(arguments[i], slotArguments, argumentCount);
+                    template = call.isStrict(i)
+                            ? new Template.StrictApply(template, argument)
+                            : new Template.Apply(template, argument);
+                }
+
+                yield template;
+            }
+            case Loop(Expression body) -> lift(body, slotArguments, argumentCount);
+            case SelfTailCall tailCall -> lift(tailCall.call(), slotArguments, argumentCount);
+            case Lambda(String ignored, Expression body, int[] captures) ->
+                    liftCombinator(body, captures, slotArguments);
+            case RecursiveBinding(String ignored, Expression body, int[] captures) ->
+                    new Template.Fix(liftCombinator(body, captures, slotArguments));
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                // Members are bound to the arguments following the ones of the enclosing combinator
+                var groupArguments = new int[members.length + captures.length + 1];
+                for (var i = 0; i < members.length; i++) {
+                    groupArguments[i + 1] = argumentCount + i;
+                }
+                for (var i = 0; i < captures.length; i++) {
+                    groupArguments[members.length + i + 1] = slotArguments[captures[i]];
+                }
+
+                var bindings = new ArrayList<Template>();
+                for (var m : members) {
+                    bindings.add(new Template.Fix(liftCombinator(m.body(), m.captures(), groupArguments)));
+                }
+
+                yield new Template.Letrec(bindings, selected);
+            }
+            default -> throw new IllegalStateException("Graph reducer does not support %s".formatted(expression));
+        };
+    }
+
+    private Template liftCombinator(Expression body, int[] captures, int[] slotArguments) {
+        var bodyArguments = new int[captures.length + 1];
+        bodyArguments[0] = captures.length;
+        for (var i = 0; i < captures.length; i++) {
+            bodyArguments[i + 1] = i;
+        }
+
+        var combinator = new Supercombinator(captures.length + 1, lift(body, bodyArguments, captures.length + 1));
+        var index = combinatorIndices.computeIfAbsent(combinator, c -> {
+            combinators.add(c);
+            return combinators.size() - 1;
+        });
+
+        Template template = new Template.CombinatorReference(index);
+        for (var c : captures) {
+            template = new Template.Apply(template, new Template.Argument(slotArguments[c]));
+        }
+
+        return template;
+    }
+}
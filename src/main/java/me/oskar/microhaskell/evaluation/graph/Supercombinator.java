@@ -0,0 +1,4 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+record Supercombinator(int arity, Template body) {
+}
@@ -0,0 +1,41 @@
+package me.oskar.microhaskell.evaluation.graph;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+import java.util.List;
+
+sealed interface Template {
+
+    record Argument(int index) implements Template {
+    }
+
+    record Constant(Expression value) implements Template {
+    }
+
+    record CombinatorReference(int combinator) implements Template {
+    }
+
+    record Apply(Template function, Template argument) implements Template {
+    }
+
+    /**
+     * An application of a function that is strict in the argument, see
+     * {@link me.oskar.microhaskell.evaluation.expression.Call#getStrictness()}. The argument is reduced before the
+     * function is entered, instead of piling up unevaluated work like an accumulator that is added to in every call.
+     */
+    record StrictApply(Template function, Template argument) implements Template {
+    }
+
+    /**
+     * An application of {@code function} to the node it is instantiated into.
+     */
+    record Fix(Template function) implements Template {
+    }
+
+    /**
+     * Instantiates {@code bindings} into new nodes that are appended to the arguments, so the bindings can refer to
+     * each other, and yields the selected one.
+     */
+    record Letrec(List<Template> bindings, int selected) implements Template {
+    }
+}
@@ -0,0 +1,411 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static me.oskar.microhaskell.evaluation.jit.Code.*;
+
+/**
+ * Compiles the body of a lambda into a hidden JVM class implementing {@link Expression}. Saturated applications of
+ * the arithmetic, comparison and {@code if} builtins are compiled to plain long arithmetic and branches, everything
+ * else is delegated to the same runtime operations the interpreter uses. Every argument that has to stay lazy gets
+ * its own entry method in the generated class, so thunks created by compiled code run compiled code as well. Compiled
+ * code assumes that every integer fits into a long; each entry is wrapped in a {@link CompiledEntry} that falls back
+ * to the interpreter once it does not. The self tail calls of a {@link Loop} rebind the frame in place and jump back to
+ * the start of its entry.
+ */
+final class BytecodeCompiler {
+
+    private static final String CLASS_NAME = "me/oskar/microhaskell/evaluation/jit/CompiledBody";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String EXPRESSION = "me/oskar/microhaskell/evaluation/expression/Expression";
+    private static final String APPLICATION = "me/oskar/microhaskell/evaluation/expression/Application";
+    private static final String CALL = "me/oskar/microhaskell/evaluation/expression/Call";
+    private static final String SELF_TAIL_CALL = "me/oskar/microhaskell/evaluation/expression/SelfTailCall";
+    private static final String THUNK = "me/oskar/microhaskell/evaluation/expression/Thunk";
+    private static final String ENVIRONMENT = "me/oskar/microhaskell/evaluation/Environment";
+    private static final String RUNTIME = "me/oskar/microhaskell/evaluation/jit/JitRuntime";
+    private static final String BUDGET = "me/oskar/microhaskell/evaluation/Budget";
+
+    private static final String EVALUATE_DESCRIPTOR = "(L%s;)L%s;".formatted(ENVIRONMENT, EXPRESSION);
+
+    private static final String MATH = "java/lang/Math";
+
+    private static final Map<String, String> ARITHMETIC = Map.of(
+            "+", "addExact", "-", "subtractExact",
+            "*", "multiplyExact", "div", "divideExact"
+    );
+    private static final Map<String, Integer> COMPARISONS = Map.of(
+            "==", IFEQ, "/=", IFNE,
+            "<", IFLT, "<=", IFLE,
+            ">", IFGT, ">=", IFGE
+    );
+    private static final Map<Integer, Integer> NEGATED_COMPARISONS = Map.of(
+            IFEQ, IFNE, IFNE, IFEQ,
+            IFLT, IFGE, IFGE, IFLT,
+            IFGT, IFLE, IFLE, IFGT
+    );
+
+    private record BuiltinCall(String name, List<Expression> arguments) {
+    }
+
+    private final ClassWriter classWriter = new ClassWriter(CLASS_NAME, OBJECT, EXPRESSION);
+    private final List<Expression> constants = new ArrayList<>();
+    private final Map<Expression, Integer> constantIndices = new IdentityHashMap<>();
+    private final List<Expression> entries = new ArrayList<>();
+    private final Map<Integer, Integer> entryConstants = new HashMap<>();
+    private Code.Label loopStart;
+
+    private BytecodeCompiler() {
+    }
+
+    static Expression compile(Expression body) {
+        return new BytecodeCompiler().compileBody(body);
+    }
+
+    private Expression compileBody(Expression body) {
+        entries.add(body);
+
+        for (var i = 0; i < entries.size(); i++) {
+            classWriter.method(ClassWriter.ACC_PRIVATE, "entry" + i, EVALUATE_DESCRIPTOR, compileEntry(entries.get(i)));
+        }
+
+        classWriter.field(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_FINAL, "constants", "[L%s;".formatted(EXPRESSION));
+        classWriter.field(ClassWriter.ACC_PRIVATE | ClassWriter.ACC_FINAL, "entry", "I");
+        classWriter.method(ClassWriter.ACC_PUBLIC, "<init>", "([L%s;I)V".formatted(EXPRESSION), compileConstructor());
+        classWriter.method(ClassWriter.ACC_PUBLIC, "evaluate", EVALUATE_DESCRIPTOR, compileDispatcher());
+
+        return instantiate(classWriter.toByteArray());
+    }
+
+    private Expression instantiate(byte[] bytes) {
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            var constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, Expression[].class, int.class));
+
+            var constantArray = constants.toArray(new Expression[0]);
+            var instances = new Expression[entries.size()];
+            for (var i = 0; i < instances.length; i++) {
+                instances[i] = new CompiledEntry((Expression) constructor.invoke(constantArray, i), entries.get(i));
+            }
+
+            for (var e : entryConstants.entrySet()) {
+                constantArray[e.getKey()] = instances[e.getValue()];
+            }
+
+            return instances[0];
+        } catch (Throwable e) {
+            throw new IllegalStateException("Could not load compiled code", e);
+        }
+    }
+
+    private Code compileConstructor() {
+        var code = new Code(3);
+
+        code.local(ALOAD, 0, 1);
+        code.op(INVOKESPECIAL, classWriter.methodReference(OBJECT, "<init>", "()V"), -1);
+        code.local(ALOAD, 0, 1);
+        code.local(ALOAD, 1, 1);
+        code.op(PUTFIELD, classWriter.fieldReference(CLASS_NAME, "constants", "[L%s;".formatted(EXPRESSION)), -2);
+        code.local(ALOAD, 0, 1);
+        code.local(ILOAD, 2, 1);
+        code.op(PUTFIELD, classWriter.fieldReference(CLASS_NAME, "entry", "I"), -2);
+        code.op(RETURN, 0);
+
+        return code;
+    }
+
+    private Code compileDispatcher() {
+        var code = new Code(2);
+
+        if (entries.size() == 1) {
+            invokeEntry(code, 0);
+            return code;
+        }
+
+        var targets = new ArrayList<Code.Label>();
+        for (var i = 0; i < entries.size(); i++) {
+            targets.add(code.newLabel());
+        }
+        var defaultTarget = code.newLabel();
+
+        code.local(ALOAD, 0, 1);
+        code.op(GETFIELD, classWriter.fieldReference(CLASS_NAME, "entry", "I"), 0);
+        code.tableSwitch(defaultTarget, targets);
+
+        for (var i = 0; i < entries.size(); i++) {
+            code.mark(targets.get(i));
+            invokeEntry(code, i);
+        }
+
+        code.mark(defaultTarget);
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+
+        return code;
+    }
+
+    private void invokeEntry(Code code, int entry) {
+        code.local(ALOAD, 0, 1);
+        code.local(ALOAD, 1, 1);
+        code.op(INVOKESPECIAL, classWriter.methodReference(CLASS_NAME, "entry" + entry, EVALUATE_DESCRIPTOR), -1);
+        code.op(ARETURN, -1);
+    }
+
+    private Code compileEntry(Expression expression) {
+        var code = new Code(3);
+
+        code.local(ALOAD, 0, 1);
+        code.op(GETFIELD, classWriter.fieldReference(CLASS_NAME, "constants", "[L%s;".formatted(EXPRESSION)), 0);
+        code.local(ASTORE, 2, -1);
+
+        loopStart = null;
+        if (expression instanceof Loop(Expression body)) {
+            loopStart = code.newLabel();
+            code.mark(loopStart);
+            expression = body;
+        }
+
+        compileValue(code, expression);
+        code.op(ARETURN, -1);
+
+        return code;
+    }
+
+    private void compileValue(Code code, Expression expression) {
+        var call = callOf(expression);
+
+        if (call != null && (ARITHMETIC.containsKey(call.name()) || COMPARISONS.containsKey(call.name()))
+                && call.arguments().size() == 2) {
+            compileLong(code, expression);
+            code.op(INVOKESTATIC, classWriter.methodReference(RUNTIME, "integer", "(J)L%s;".formatted(EXPRESSION)), -1);
+            return;
+        }
+
+        if (call != null && call.name().equals("if") && call.arguments().size() == 3) {
+            compileIf(code, call.arguments(), this::compileValue);
+            return;
+        }
+
+        switch (expression) {
+            case LocalVariable(String ignored, int slot) -> {
+                loadLocal(code, slot);
+                evaluate(code);
+            }
+            case GlobalVariable(String ignored, Expression value)
+                    when value instanceof BuiltinFunction || value instanceof Nil -> pushConstant(code, value);
+            case IntLiteral literal -> pushConstant(code, literal);
+            case Cons cons -> pushConstant(code, cons);
+            case Nil nil -> pushConstant(code, nil);
+            case Application(Expression function, Expression argument) -> {
+                compileValue(code, function);
+                compileDelayed(code, argument);
+                code.op(INVOKESTATIC, classWriter.methodReference(APPLICATION, "apply",
+                        "(L%s;L%s;)L%s;".formatted(EXPRESSION, EXPRESSION, EXPRESSION)), -1);
+            }
+            case Call knownCall -> {
+                var arguments = knownCall.getArguments();
+
+                pushConstant(code, knownCall);
+                code.op(CHECKCAST, classWriter.classReference(CALL), 0);
+                compileValue(code, knownCall.getFunction());
+                code.pushInt(arguments.length, classWriter);
+                code.op(ANEWARRAY, classWriter.classReference(EXPRESSION), 0);
+                for (var i = 0; i < arguments.length; i++) {
+                    code.op(DUP, 1);
+                    code.pushInt(i, classWriter);
+                    if (knownCall.isStrict(i)) {
+                        compileValue(code, arguments[i]);
+                    } else {
+                        compileDelayed(code, arguments[i]);
+                    }
+                    code.op(AASTORE, -3);
+                }
+                code.op(INVOKEVIRTUAL, classWriter.methodReference(CALL, "apply",
+                        "(L%s;[L%s;)L%s;".formatted(EXPRESSION, EXPRESSION, EXPRESSION)), -2);
+            }
+            case SelfTailCall tailCall -> compileTailCall(code, tailCall);
+            default -> {
+                pushConstant(code, expression);
+                evaluate(code);
+            }
+        }
+    }
+
+    private void compileTailCall(Code code, SelfTailCall tailCall) {
+        if (loopStart == null) {
+            throw new IllegalStateException("Tail call outside of its loop: %s".formatted(tailCall));
+        }
+
+        var stack = code.getStack();
+        var call = tailCall.call();
+        var arguments = call.getArguments();
+
+        pushConstant(code, tailCall);
+        code.op(CHECKCAST, classWriter.classReference(SELF_TAIL_CALL), 0);
+        code.local(ALOAD, 1, 1);
+        code.pushInt(arguments.length, classWriter);
+        code.op(ANEWARRAY, classWriter.classReference(EXPRESSION), 0);
+        for (var i = 0; i < arguments.length; i++) {
+            if (tailCall.slots()[i] < 0) continue;
+
+            code.op(DUP, 1);
+            code.pushInt(i, classWriter);
+            if (call.isStrict(i)) {
+                compileValue(code, arguments[i]);
+            } else {
+                compileDelayed(code, arguments[i]);
+            }
+            code.op(AASTORE, -3);
+        }
+        code.op(INVOKEVIRTUAL, classWriter.methodReference(SELF_TAIL_CALL, "rebind",
+                "(L%s;[L%s;)L%s;".formatted(ENVIRONMENT, EXPRESSION, ENVIRONMENT)), -2);
+        code.local(ASTORE, 1, -1);
+        code.op(INVOKESTATIC, classWriter.methodReference(BUDGET, "tick", "()V"), 0);
+        code.branch(GOTO, loopStart, 0);
+
+        // Nothing is left on the stack after the jump, the branch that follows starts from where this one did
+        code.setStack(stack + 1);
+    }
+
+    private void compileLong(Code code, Expression expression) {
+        var call = callOf(expression);
+
+        if (call != null && ARITHMETIC.containsKey(call.name()) && call.arguments().size() == 2) {
+            compileLong(code, call.arguments().getFirst());
+            compileLong(code, call.arguments().get(1));
+            code.op(INVOKESTATIC, classWriter.methodReference(MATH, ARITHMETIC.get(call.name()), "(JJ)J"), -2);
+        } else if (call != null && COMPARISONS.containsKey(call.name()) && call.arguments().size() == 2) {
+            var stack = code.getStack();
+            var isTrue = code.newLabel();
+            var end = code.newLabel();
+
+            compileLong(code, call.arguments().getFirst());
+            compileLong(code, call.arguments().get(1));
+            code.op(LCMP, -3);
+            code.branch(COMPARISONS.get(call.name()), isTrue, -1);
+            code.pushLong(0, classWriter);
+            code.branch(GOTO, end, 0);
+            code.setStack(stack);
+            code.mark(isTrue);
+            code.pushLong(1, classWriter);
+            code.mark(end);
+        } else if (call != null && call.name().equals("if") && call.arguments().size() == 3) {
+            compileIf(code, call.arguments(), this::compileLong);
+        } else if (expression instanceof IntLiteral(long value)) {
+            code.pushLong(value, classWriter);
+        } else {
+            compileValue(code, expression);
+            code.op(INVOKESTATIC, classWriter.methodReference(RUNTIME, "longValue", "(L%s;)J".formatted(EXPRESSION)), 1);
+        }
+    }
+
+    private void compileIf(Code code, List<Expression> arguments, BiConsumer<Code, Expression> compileBranch) {
+        var alternative = code.newLabel();
+        var end = code.newLabel();
+
+        compileCondition(code, arguments.getFirst(), alternative);
+
+        var stack = code.getStack();
+        compileBranch.accept(code, arguments.get(1));
+        code.branch(GOTO, end, 0);
+
+        code.setStack(stack);
+        code.mark(alternative);
+        compileBranch.accept(code, arguments.get(2));
+        code.mark(end);
+    }
+
+    private void compileCondition(Code code, Expression condition, Code.Label isFalse) {
+        var call = callOf(condition);
+
+        if (call != null && COMPARISONS.containsKey(call.name()) && call.arguments().size() == 2) {
+            compileLong(code, call.arguments().getFirst());
+            compileLong(code, call.arguments().get(1));
+            code.op(LCMP, -3);
+            code.branch(NEGATED_COMPARISONS.get(COMPARISONS.get(call.name())), isFalse, -1);
+        } else {
+            compileLong(code, condition);
+            code.pushLong(1, classWriter);
+            code.op(LCMP, -3);
+            code.branch(IFNE, isFalse, -1);
+        }
+    }
+
+    private void compileDelayed(Code code, Expression expression) {
+        switch (expression) {
+            case LocalVariable(String ignored, int slot) -> loadLocal(code, slot);
+            case GlobalVariable(String ignored, Expression value)
+                    when value instanceof BuiltinFunction || value instanceof Nil -> pushConstant(code, value);
+            case IntLiteral literal -> pushConstant(code, literal);
+            case Cons cons -> pushConstant(code, cons);
+            case Nil nil -> pushConstant(code, nil);
+            case Lambda lambda -> {
+                pushConstant(code, lambda);
+                evaluate(code);
+            }
+            default -> {
+                code.op(NEW, classWriter.classReference(THUNK), 1);
+                code.op(DUP, 1);
+                pushConstant(code, entry(expression));
+                code.local(ALOAD, 1, 1);
+                code.op(INVOKESPECIAL, classWriter.methodReference(THUNK, "<init>",
+                        "(L%s;L%s;)V".formatted(EXPRESSION, ENVIRONMENT)), -3);
+            }
+        }
+    }
+
+    private Expression entry(Expression expression) {
+        entries.add(expression);
+
+        var placeholder = new IntLiteral(0);
+        var index = constants.size();
+        constants.add(placeholder);
+        constantIndices.put(placeholder, index);
+        entryConstants.put(index, entries.size() - 1);
+
+        return placeholder;
+    }
+
+    private void loadLocal(Code code, int slot) {
+        code.local(ALOAD, 1, 1);
+        code.pushInt(slot, classWriter);
+        code.op(INVOKEVIRTUAL, classWriter.methodReference(ENVIRONMENT, "lookup", "(I)L%s;".formatted(EXPRESSION)), -1);
+    }
+
+    private void evaluate(Code code) {
+        code.local(ALOAD, 1, 1);
+        code.invokeInterface(classWriter.interfaceMethodReference(EXPRESSION, "evaluate", EVALUATE_DESCRIPTOR), 1, -1);
+    }
+
+    private void pushConstant(Code code, Expression constant) {
+        var index = constantIndices.computeIfAbsent(constant, c -> {
+            constants.add(c);
+            return constants.size() - 1;
+        });
+
+        code.local(ALOAD, 2, 1);
+        code.pushInt(index, classWriter);
+        code.op(AALOAD, -1);
+    }
+
+    private static BuiltinCall callOf(Expression expression) {
+        var arguments = new ArrayList<Expression>();
+
+        while (expression instanceof Application(Expression function, Expression argument)) {
+            arguments.addFirst(argument);
+            expression = function;
+        }
+
+        if (arguments.isEmpty()) return null;
+        if (!(expression instanceof GlobalVariable(String name, Expression value))) return null;
+        if (!(value instanceof BuiltinFunction)) return null;
+
+        return new BuiltinCall(name, arguments);
+    }
+}
@@ -0,0 +1,197 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer for the code generated by {@link BytecodeCompiler}. Classes are emitted with major
+ * version 49 so that no stack map frames have to be computed for branches.
+ */
+final class ClassWriter {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+    private static final int CLASS_FILE_MAJOR_VERSION = 49;
+
+    private record Member(int access, int name, int descriptor, Code code) {
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<Member> fields = new ArrayList<>();
+    private final List<Member> methods = new ArrayList<>();
+
+    ClassWriter(String name, String superName, String... interfaceNames) {
+        thisClass = classReference(name);
+        superClass = classReference(superName);
+        for (var i : interfaceNames) {
+            interfaces.add(classReference(i));
+        }
+    }
+
+    void field(int access, String name, String descriptor) {
+        fields.add(new Member(access, utf8(name), utf8(descriptor), null));
+    }
+
+    void method(int access, String name, String descriptor, Code code) {
+        methods.add(new Member(access, utf8(name), utf8(descriptor), code));
+    }
+
+    int utf8(String value) {
+        return poolEntry("Utf8:" + value, () -> {
+            pool.writeByte(1);
+            pool.writeUTF(value);
+        });
+    }
+
+    int integer(int value) {
+        return poolEntry("Integer:" + value, () -> {
+            pool.writeByte(3);
+            pool.writeInt(value);
+        });
+    }
+
+    int longConstant(long value) {
+        var index = poolEntry("Long:" + value, () -> {
+            pool.writeByte(5);
+            pool.writeLong(value);
+        });
+
+        // A long takes up two entries of the constant pool
+        if (index == poolCount - 1) poolCount++;
+
+        return index;
+    }
+
+    int classReference(String internalName) {
+        var name = utf8(internalName);
+        return poolEntry("Class:" + internalName, () -> {
+            pool.writeByte(7);
+            pool.writeShort(name);
+        });
+    }
+
+    int fieldReference(String owner, String name, String descriptor) {
+        return memberReference(9, owner, name, descriptor);
+    }
+
+    int methodReference(String owner, String name, String descriptor) {
+        return memberReference(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodReference(String owner, String name, String descriptor) {
+        return memberReference(11, owner, name, descriptor);
+    }
+
+    private int memberReference(int tag, String owner, String name, String descriptor) {
+        var ownerIndex = classReference(owner);
+        var nameIndex = utf8(name);
+        var descriptorIndex = utf8(descriptor);
+        var nameAndType = poolEntry("NameAndType:" + name + ":" + descriptor, () -> {
+            pool.writeByte(12);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+
+        return poolEntry("Member" + tag + ":" + owner + "." + name + ":" + descriptor, () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    private int poolEntry(String key, PoolWriter writer) {
+        var existing = poolIndices.get(key);
+        if (existing != null) return existing;
+
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var index = poolCount++;
+        poolIndices.put(key, index);
+
+        return index;
+    }
+
+    byte[] toByteArray() {
+        var codeAttribute = methods.isEmpty() ? 0 : utf8("Code");
+
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+
+            out.writeInt(CLASS_FILE_MAGIC);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_MAJOR_VERSION);
+
+            pool.flush();
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+
+            out.writeShort(interfaces.size());
+            for (var i : interfaces) {
+                out.writeShort(i);
+            }
+
+            out.writeShort(fields.size());
+            for (var f : fields) {
+                out.writeShort(f.access());
+                out.writeShort(f.name());
+                out.writeShort(f.descriptor());
+                out.writeShort(0);
+            }
+
+            out.writeShort(methods.size());
+            for (var m : methods) {
+                out.writeShort(m.access());
+                out.writeShort(m.name());
+                out.writeShort(m.descriptor());
+                out.writeShort(1);
+
+                var code = m.code().toByteArray();
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + code.length);
+                out.writeShort(m.code().getMaxStack());
+                out.writeShort(m.code().getMaxLocals());
+                out.writeInt(code.length);
+                out.write(code);
+                out.writeShort(0);
+                out.writeShort(0);
+            }
+
+            out.writeShort(0);
+            out.flush();
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
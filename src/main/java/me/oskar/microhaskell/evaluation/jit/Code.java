@@ -0,0 +1,209 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bytecode buffer of a single method. Keeps track of the operand stack depth so that {@code max_stack} can be
+ * derived from the emitted instructions.
+ */
+final class Code {
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int ASTORE = 0x3a;
+    static final int DUP = 0x59;
+    static final int I2L = 0x85;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int TABLESWITCH = 0xaa;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+    static final int ILOAD = 0x15;
+
+    static final class Label {
+        private int position = -1;
+        private final List<int[]> references = new ArrayList<>();
+    }
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final List<Label> labels = new ArrayList<>();
+    private final int maxLocals;
+    private int stack = 0;
+    private int maxStack = 0;
+
+    Code(int maxLocals) {
+        this.maxLocals = maxLocals;
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    int getStack() {
+        return stack;
+    }
+
+    void setStack(int stack) {
+        this.stack = stack;
+    }
+
+    void op(int opcode, int stackDelta) {
+        bytes.write(opcode);
+        adjustStack(stackDelta);
+    }
+
+    void op(int opcode, int operand, int stackDelta) {
+        bytes.write(opcode);
+        writeShort(operand);
+        adjustStack(stackDelta);
+    }
+
+    void local(int opcode, int index, int stackDelta) {
+        bytes.write(opcode);
+        bytes.write(index);
+        adjustStack(stackDelta);
+    }
+
+    void invokeInterface(int method, int argumentCount, int stackDelta) {
+        bytes.write(INVOKEINTERFACE);
+        writeShort(method);
+        bytes.write(argumentCount + 1);
+        bytes.write(0);
+        adjustStack(stackDelta);
+    }
+
+    void pushInt(int value, ClassWriter classWriter) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            bytes.write(BIPUSH);
+            bytes.write(value);
+            adjustStack(1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH, value & 0xffff, 1);
+        } else {
+            op(LDC_W, classWriter.integer(value), 1);
+        }
+    }
+
+    void pushLong(long value, ClassWriter classWriter) {
+        if (value == 0 || value == 1) {
+            op(LCONST_0 + (int) value, 2);
+        } else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            pushInt((int) value, classWriter);
+            op(I2L, 1);
+        } else {
+            op(LDC2_W, classWriter.longConstant(value), 2);
+        }
+    }
+
+    Label newLabel() {
+        var label = new Label();
+        labels.add(label);
+        return label;
+    }
+
+    void branch(int opcode, Label target, int stackDelta) {
+        var position = bytes.size();
+        bytes.write(opcode);
+        target.references.add(new int[]{position, position + 1});
+        writeShort(0);
+        adjustStack(stackDelta);
+    }
+
+    void tableSwitch(Label defaultTarget, List<Label> targets) {
+        var position = bytes.size();
+        bytes.write(TABLESWITCH);
+        while (bytes.size() % 4 != 0) {
+            bytes.write(0);
+        }
+
+        defaultTarget.references.add(new int[]{position, bytes.size(), 4});
+        writeInt(0);
+        writeInt(0);
+        writeInt(targets.size() - 1);
+        for (var t : targets) {
+            t.references.add(new int[]{position, bytes.size(), 4});
+            writeInt(0);
+        }
+        adjustStack(-1);
+    }
+
+    void mark(Label label) {
+        label.position = bytes.size();
+    }
+
+    byte[] toByteArray() {
+        var code = bytes.toByteArray();
+
+        if (code.length > 0xffff) {
+            throw new IllegalStateException("Method too large");
+        }
+
+        for (var label : labels) {
+            for (var reference : label.references) {
+                var offset = label.position - reference[0];
+                var at = reference[1];
+
+                if (reference.length > 2) {
+                    code[at] = (byte) (offset >>> 24);
+                    code[at + 1] = (byte) (offset >>> 16);
+                    code[at + 2] = (byte) (offset >>> 8);
+                    code[at + 3] = (byte) offset;
+                } else {
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Branch offset out of range");
+                    }
+                    code[at] = (byte) (offset >>> 8);
+                    code[at + 1] = (byte) offset;
+                }
+            }
+        }
+
+        return code;
+    }
+
+    private void adjustStack(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void writeShort(int value) {
+        bytes.write(value >>> 8);
+        bytes.write(value);
+    }
+
+    private void writeInt(int value) {
+        writeShort(value >>> 16);
+        writeShort(value & 0xffff);
+    }
+}
@@ -0,0 +1,40 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+/**
+ * Entry into compiled code. The compiled code computes on longs and throws an {@link ArithmeticException} as soon as
+ * an integer does not fit into one. The entry then deoptimizes for good and evaluates the interpreted expression
+ * instead, which promotes to {@link java.math.BigInteger}. The interpreter raises genuine arithmetic errors such as a
+ * division by zero again.
+ */
+final class CompiledEntry implements Expression {
+
+    private final Expression interpreted;
+    private Expression target;
+
+    CompiledEntry(Expression compiled, Expression interpreted) {
+        this.interpreted = interpreted;
+        this.target = compiled;
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        var current = target;
+
+        try {
+            return current.evaluate(env);
+        } catch (ArithmeticException e) {
+            if (current == interpreted) throw e;
+
+            target = interpreted;
+            return interpreted.evaluate(env);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return interpreted.toString();
+    }
+}
@@ -0,0 +1,19 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.IntLiteral;
+import me.oskar.microhaskell.evaluation.expression.IntOperator;
+
+final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    static Expression integer(long value) {
+        return IntLiteral.of(value);
+    }
+
+    static long longValue(Expression value) {
+        return IntOperator.unbox(value);
+    }
+}
@@ -0,0 +1,61 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.Loop;
+
+final class TieredBody implements Expression {
+
+    private final Expression body;
+    private final int threshold;
+    // Racing threads may lose counts or compile the body twice, but always see a fully constructed target
+    private volatile Expression target;
+    private int invocations = 0;
+
+    TieredBody(Expression body, int threshold) {
+        this.body = body;
+        this.threshold = threshold;
+        this.target = body;
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        if (!(body instanceof Loop loop)) {
+            count();
+            return target.evaluate(env);
+        }
+
+        // Every iteration counts as an invocation, a loop that gets hot is continued in its compiled form
+        var frame = env;
+        while (true) {
+            Budget.tick();
+            count();
+            if (target != body) return target.evaluate(frame);
+
+            var result = loop.body().evaluate(frame);
+            if (!(result instanceof Loop.Jump(Environment next))) return result;
+
+            frame = next;
+        }
+    }
+
+    private void count() {
+        if (invocations < threshold && ++invocations == threshold) {
+            target = compile();
+        }
+    }
+
+    private Expression compile() {
+        try {
+            return BytecodeCompiler.compile(body);
+        } catch (IllegalStateException e) {
+            return body;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return body.toString();
+    }
+}
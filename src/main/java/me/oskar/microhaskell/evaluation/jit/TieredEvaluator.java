@@ -0,0 +1,59 @@
+package me.oskar.microhaskell.evaluation.jit;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.Evaluator;
+import me.oskar.microhaskell.evaluation.expression.Application;
+import me.oskar.microhaskell.evaluation.expression.Call;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.Lambda;
+import me.oskar.microhaskell.evaluation.expression.Loop;
+import me.oskar.microhaskell.evaluation.expression.RecursiveBinding;
+import me.oskar.microhaskell.evaluation.expression.RecursiveGroup;
+import me.oskar.microhaskell.evaluation.expression.SelfTailCall;
+
+import java.util.stream.Stream;
+
+/**
+ * Interprets the IR like {@link me.oskar.microhaskell.evaluation.RecursiveEvaluator}, but counts the invocations of
+ * every lambda and replaces the body of a lambda with compiled JVM bytecode once it becomes hot.
+ */
+public class TieredEvaluator implements Evaluator {
+
+    private final int threshold;
+
+    public TieredEvaluator(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public Expression prepare(Expression program) {
+        return switch (program) {
+            // Only the innermost body of a curried chain is counted, so saturated calls can still enter it at once
+            case Lambda(String parameter, Lambda body, int[] captures) -> new Lambda(parameter, prepare(body), captures);
+            case Lambda(String parameter, Expression body, int[] captures) ->
+                    new Lambda(parameter, new TieredBody(prepare(body), threshold), captures);
+            case RecursiveBinding(String name, Expression body, int[] captures) ->
+                    new RecursiveBinding(name, prepare(body), captures);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) ->
+                    new RecursiveGroup(Stream.of(members).map(m -> (RecursiveBinding) prepare(m))
+                            .toArray(RecursiveBinding[]::new), selected, captures);
+            case Application(Expression function, Expression argument) ->
+                    new Application(prepare(function), prepare(argument));
+            case Call call -> prepareCall(call);
+            case Loop(Expression body) -> new Loop(prepare(body));
+            case SelfTailCall(Call call, String[] parameters, int[] slots) ->
+                    new SelfTailCall(prepareCall(call), parameters, slots);
+            default -> program;
+        };
+    }
+
+    private Call prepareCall(Call call) {
+        return new Call(prepare(call.getFunction()),
+                Stream.of(call.getArguments()).map(this::prepare).toArray(Expression[]::new), call.getStrictness());
+    }
+
+    @Override
+    public Expression evaluate(Expression program) {
+        return program.evaluate(Environment.EMPTY);
+    }
+}
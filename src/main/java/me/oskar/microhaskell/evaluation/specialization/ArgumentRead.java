@@ -0,0 +1,17 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+record ArgumentRead(String name) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return env.getArgument().evaluate(env);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,172 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.Budget;
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Application of a function to one or more arguments that specializes itself on the callee it observes on its first
+ * execution. A call site either calls a builtin directly, keeps an inline cache of up to
+ * {@value #MAX_POLYMORPHISM} lambdas together with the {@link UncurriedEntry} it enters them through, or falls back
+ * to generic application once one of its guards fails.
+ */
+final class CallSite implements Expression {
+
+    private static final int MAX_POLYMORPHISM = 4;
+
+    private enum State {
+        UNINITIALIZED, BUILTIN, CLOSURE, GENERIC
+    }
+
+    private record CacheEntry(Lambda lambda, UncurriedEntry entry) {
+    }
+
+    private final Expression function;
+    private final Expression[] arguments;
+    private final boolean[] strictness;
+    // The builtin if this call site applies a selector like head, see Thunk#select
+    private final BuiltinFunction selector;
+
+    // Sparks may evaluate the same call site on several threads. The fields only hold immutable values that are
+    // replaced as a whole, so a racing thread at worst specializes or deoptimizes the call site once more.
+    private volatile State state = State.UNINITIALIZED;
+    private volatile BuiltinFunction cachedBuiltin = null;
+    private volatile CacheEntry[] cache = new CacheEntry[0];
+
+    CallSite(Expression function, Expression[] arguments, boolean[] strictness) {
+        this.function = function;
+        this.arguments = arguments;
+        this.strictness = strictness;
+        this.selector = function instanceof GlobalVariable(String ignored, BuiltinFunction builtin)
+                && builtin.isSelector() && arguments.length == 1 ? builtin : null;
+    }
+
+    @Override
+    public Expression evaluate(Environment env) {
+        var callee = function.evaluate(env);
+
+        if (state == State.UNINITIALIZED) specialize(callee);
+
+        switch (state) {
+            case BUILTIN -> {
+                if (callee == cachedBuiltin) return callBuiltin((BuiltinFunction) callee, env);
+            }
+            case CLOSURE -> {
+                if (callee instanceof Closure closure) {
+                    var entry = lookupOrCache(closure.lambda());
+                    if (entry != null) return callClosure(closure, entry, env);
+                }
+            }
+            default -> {
+                return callGeneric(callee, 0, env);
+            }
+        }
+
+        deoptimize();
+        return callGeneric(callee, 0, env);
+    }
+
+    private void specialize(Expression callee) {
+        if (callee instanceof BuiltinFunction bf && !bf.isPartiallyApplied() && bf.getArity() == arguments.length) {
+            cachedBuiltin = bf;
+            state = State.BUILTIN;
+        } else if (callee instanceof Closure(Lambda lambda, Expression[] ignored)) {
+            cache = new CacheEntry[]{new CacheEntry(lambda, UncurriedEntry.of(lambda, arguments.length))};
+            state = State.CLOSURE;
+        } else {
+            state = State.GENERIC;
+        }
+    }
+
+    private void deoptimize() {
+        state = State.GENERIC;
+        cachedBuiltin = null;
+        cache = new CacheEntry[0];
+    }
+
+    private UncurriedEntry lookupOrCache(Lambda lambda) {
+        var current = cache;
+        for (var cached : current) {
+            if (cached.lambda() == lambda) return cached.entry();
+        }
+
+        if (current.length == MAX_POLYMORPHISM) return null;
+
+        var entry = UncurriedEntry.of(lambda, arguments.length);
+        var extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = new CacheEntry(lambda, entry);
+        cache = extended;
+
+        return entry;
+    }
+
+    private Expression callBuiltin(BuiltinFunction builtin, Environment env) {
+        var evaluatedArguments = new ArrayList<Expression>(arguments.length);
+
+        for (var i = 0; i < arguments.length; i++) {
+            if (i < builtin.getStrictArguments()) {
+                evaluatedArguments.add(arguments[i].evaluate(env));
+            } else {
+                evaluatedArguments.add(delay(i, env));
+            }
+        }
+
+        return BuiltinFunction.evaluateResult(builtin.applyFullyAndClear(evaluatedArguments));
+    }
+
+    private Expression callClosure(Closure closure, UncurriedEntry entry, Environment env) {
+        Budget.tick();
+
+        if (entry.arity() == 1) {
+            var frame = new Environment(delay(0, env), closure.captured());
+            return callGeneric(entry.body().evaluate(frame), 1, env);
+        }
+
+        var delayedArguments = new Expression[entry.arity()];
+        for (var i = 0; i < delayedArguments.length; i++) {
+            delayedArguments[i] = delay(i, env);
+        }
+
+        var result = entry.body().evaluate(entry.frame(closure.captured(), delayedArguments, 0));
+
+        return callGeneric(result, entry.arity(), env);
+    }
+
+    private Expression callGeneric(Expression callee, int firstArgument, Environment env) {
+        var result = callee;
+        for (var i = firstArgument; i < arguments.length; i++) {
+            result = Application.apply(result, delay(i, env));
+        }
+
+        return result;
+    }
+
+    private Expression delay(int index, Environment env) {
+        if (strictness[index]) return arguments[index].evaluate(env);
+
+        return delayLazily(index, env);
+    }
+
+    private Expression delayLazily(int index, Environment env) {
+        return switch (arguments[index]) {
+            case ArgumentRead ignored -> env.getArgument();
+            case CapturedRead(String ignored, int capturedIndex) -> env.getCaptured(capturedIndex);
+            // A selection like head xs delays its list even though head is strict in it, see Thunk.select
+            case CallSite site when site.selector != null -> Thunk.select(site.selector, site.delayLazily(0, env));
+            default -> Thunk.delay(arguments[index], env);
+        };
+    }
+
+    @Override
+    public String toString() {
+        var s = function.toString();
+        for (var a : arguments) {
+            s = "(%s %s)".formatted(s, a);
+        }
+
+        return s;
+    }
+}
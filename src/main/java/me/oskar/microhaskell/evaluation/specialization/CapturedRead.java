@@ -0,0 +1,17 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+record CapturedRead(String name, int index) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return env.getCaptured(index).evaluate(env);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,35 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.IntegerOverflow;
+
+/**
+ * Saturated application of {@code if}. The condition is evaluated to a raw long and only the selected branch is
+ * evaluated, in the frame of the conditional itself instead of through a thunk.
+ */
+record Conditional(Expression condition, Expression consequence, Expression alternative) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        return isTrue(env) ? consequence.evaluate(env) : alternative.evaluate(env);
+    }
+
+    @Override
+    public long evaluateLong(Environment env) {
+        return isTrue(env) ? consequence.evaluateLong(env) : alternative.evaluateLong(env);
+    }
+
+    private boolean isTrue(Environment env) {
+        try {
+            return condition.evaluateLong(env) == 1;
+        } catch (IntegerOverflow e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(((if %s) %s) %s)".formatted(condition, consequence, alternative);
+    }
+}
@@ -0,0 +1,48 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.Environment;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.evaluation.expression.IntLiteral;
+import me.oskar.microhaskell.evaluation.expression.IntOperator;
+import me.oskar.microhaskell.evaluation.expression.IntegerOverflow;
+
+/**
+ * Saturated application of an arithmetic or comparison builtin. Its operands are evaluated with
+ * {@link Expression#evaluateLong(Environment)}, so nested operations pass raw longs to each other and only the
+ * outermost result is boxed. Once an operand overflows, the operation continues on the boxed values.
+ */
+record IntOperation(String name, IntOperator operator, Expression left, Expression right) implements Expression {
+
+    @Override
+    public Expression evaluate(Environment env) {
+        try {
+            return IntLiteral.of(evaluateLong(env));
+        } catch (IntegerOverflow e) {
+            return e.getValue();
+        }
+    }
+
+    @Override
+    public long evaluateLong(Environment env) {
+        long l;
+        try {
+            l = left.evaluateLong(env);
+        } catch (IntegerOverflow e) {
+            return IntOperator.unbox(operator.apply(e.getValue(), right.evaluate(env)));
+        }
+
+        long r;
+        try {
+            r = right.evaluateLong(env);
+        } catch (IntegerOverflow e) {
+            return IntOperator.unbox(operator.apply(IntLiteral.of(l), e.getValue()));
+        }
+
+        return operator.applyAsLong(l, r);
+    }
+
+    @Override
+    public String toString() {
+        return "((%s %s) %s)".formatted(name, left, right);
+    }
+}
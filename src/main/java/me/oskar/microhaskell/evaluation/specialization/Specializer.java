@@ -0,0 +1,71 @@
+package me.oskar.microhaskell.evaluation.specialization;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites resolved IR into nodes that specialize themselves while the program runs: application spines become
+ * {@link CallSite}s and local variables become direct reads of the argument or of a captured value. Saturated
+ * applications of the int builtins and of {@code if} become {@link IntOperation}s and {@link Conditional}s, which
+ * pass unboxed longs between each other and fall back to boxed values, e.g. a {@link BigIntLiteral}, once a result
+ * doesn't fit into a long.
+ */
+public class Specializer {
+
+    public Expression specialize(Expression expression) {
+        return switch (expression) {
+            case LocalVariable(String name, int slot) ->
+                    slot == 0 ? new ArgumentRead(name) : new CapturedRead(name, slot - 1);
+            case Lambda(String parameter, Expression body, int[] captures) ->
+                    new Lambda(parameter, specialize(body), captures);
+            case RecursiveBinding(String name, Expression body, int[] captures) ->
+                    new RecursiveBinding(name, specialize(body), captures);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) ->
+                    new RecursiveGroup(Stream.of(members).map(m -> (RecursiveBinding) specialize(m))
+                            .toArray(RecursiveBinding[]::new), selected, captures);
+            case Application application -> specializeApplication(application);
+            case Call call -> specializeCall(call.getFunction(), call.getArguments(), call.getStrictness());
+            case Loop(Expression body) -> new Loop(specialize(body));
+            case SelfTailCall(Call call, String[] parameters, int[] slots) -> {
+                // Variables stay unspecialized, so they are passed on as they are instead of being delayed
+                var arguments = Stream.of(call.getArguments())
+                        .map(a -> a instanceof LocalVariable ? a : specialize(a))
+                        .toArray(Expression[]::new);
+                yield new SelfTailCall(new Call(call.getFunction(), arguments, call.getStrictness()), parameters,
+                        slots);
+            }
+            default -> expression;
+        };
+    }
+
+    private Expression specializeApplication(Application application) {
+        var arguments = new ArrayList<Expression>();
+
+        Expression function = application;
+        while (function instanceof Application(Expression f, Expression argument)) {
+            arguments.addFirst(argument);
+            function = f;
+        }
+
+        return specializeCall(function, arguments.toArray(new Expression[0]), new boolean[arguments.size()]);
+    }
+
+    private Expression specializeCall(Expression function, Expression[] arguments, boolean[] strictness) {
+        var specializedArguments = Stream.of(arguments).map(this::specialize).toArray(Expression[]::new);
+
+        if (function instanceof GlobalVariable(String name, Expression value)
+                && value instanceof BuiltinFunction bf && !bf.isPartiallyApplied()) {
+            if (bf.getIntOperator() != null && arguments.length == 2) {
+                return new IntOperation(name, bf.getIntOperator(), specializedArguments[0], specializedArguments[1]);
+            }
+
+            if (name.equals("if") && arguments.length == 3) {
+                return new Conditional(specializedArguments[0], specializedArguments[1], specializedArguments[2]);
+            }
+        }
+
+        return new CallSite(specialize(function), specializedArguments, strictness);
+    }
+}
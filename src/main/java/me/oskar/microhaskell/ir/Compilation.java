@@ -0,0 +1,11 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.Expression;
+
+import java.util.Map;
+
+/**
+ * The resolved IR of a program together with the counters reported by the passes that produced it.
+ */
+public record Compilation(Expression program, Map<String, Long> statistics) {
+}
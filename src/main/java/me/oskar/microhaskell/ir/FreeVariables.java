@@ -0,0 +1,67 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The names an unresolved expression refers to without binding them itself.
+ */
+public final class FreeVariables {
+
+    private FreeVariables() {
+    }
+
+    public static Set<String> of(Expression expression) {
+        var free = new HashSet<String>();
+        collect(expression, new HashSet<>(), free);
+
+        return free;
+    }
+
+    private static void collect(Expression expression, Set<String> bound, Set<String> free) {
+        switch (expression) {
+            case Variable(String name) -> {
+                if (!bound.contains(name)) free.add(name);
+            }
+            case Lambda(String parameter, Expression body, int[] ignored) -> collectBinding(parameter, body, bound, free);
+            case RecursiveBinding(String name, Expression body, int[] ignored) ->
+                    collectBinding(name, body, bound, free);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                var groupBound = new HashSet<>(bound);
+                for (var m : members) {
+                    groupBound.add(m.name());
+                }
+
+                for (var m : members) {
+                    collect(m, groupBound, free);
+                }
+            }
+            case Application(Expression function, Expression argument) -> {
+                collect(function, bound, free);
+                collect(argument, bound, free);
+            }
+            case Call call -> {
+                collect(call.getFunction(), bound, free);
+                for (var argument : call.getArguments()) {
+                    collect(argument, bound, free);
+                }
+            }
+            case Loop(Expression body) -> collect(body, bound, free);
+            case SelfTailCall tailCall -> collect(tailCall.call(), bound, free);
+            default -> {
+            }
+        }
+    }
+
+    private static void collectBinding(String name, Expression body, Set<String> bound, Set<String> free) {
+        if (!bound.add(name)) {
+            collect(body, bound, free);
+            return;
+        }
+
+        collect(body, bound, free);
+        bound.remove(name);
+    }
+}
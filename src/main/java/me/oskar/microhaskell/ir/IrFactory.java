@@ -0,0 +1,343 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Creates the nodes of the IR of a program and shares structurally equal ones (hash consing), so e.g. all uses of
+ * {@code if} refer to one {@code Variable("if")} and a subtree that is generated again, like the body of an inlined
+ * function, is only stored once. Sharing is safe since the passes never modify a node, they build new ones, and
+ * {@link ScopeResolver} builds the nodes that are evaluated separately for every scope.
+ * <p>
+ * The {@link Structure} of a node is computed from the ones of its children when the node is interned, so interning
+ * an expression whose children are interned already and comparing or hashing structures takes constant time. Two
+ * interned nodes are structurally equal if and only if they are the same object. Nodes this factory doesn't know,
+ * e.g. builtins, are only equal to themselves.
+ */
+public class IrFactory {
+
+    /**
+     * The kind and fields of an interned node, with its children compared by identity.
+     */
+    public static final class Structure {
+
+        private final Class<?> kind;
+        private final Object[] fields;
+        private final int hash;
+
+        private Structure(Class<?> kind, Object[] fields, int hash) {
+            this.kind = kind;
+            this.fields = fields;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Structure other) || kind != other.kind || hash != other.hash
+                    || fields.length != other.fields.length) {
+                return false;
+            }
+
+            for (var i = 0; i < fields.length; i++) {
+                var field = fields[i];
+                var otherField = other.fields[i];
+
+                if (field instanceof Expression || otherField instanceof Expression) {
+                    if (field != otherField) return false;
+                } else if (!Objects.deepEquals(field, otherField)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * A hash of the structure of the node, which is the same in every run.
+         */
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Structure, Expression> nodes = new HashMap<>();
+    // The interned node of every expression that was interned, including the interned nodes themselves
+    private final Map<Expression, Expression> interned = new IdentityHashMap<>();
+    private final Map<Expression, Structure> structures = new IdentityHashMap<>();
+
+    private int createdNodes = 0;
+    private int reusedNodes = 0;
+    private long savedBytes = 0;
+
+    public Variable variable(String name) {
+        return (Variable) create(new Variable(name));
+    }
+
+    public Expression literal(BigInteger value) {
+        return create(IntLiteral.of(value));
+    }
+
+    public Cons cons(Expression head, Expression tail) {
+        return (Cons) create(new Cons(head, tail));
+    }
+
+    public Application application(Expression function, Expression argument) {
+        return (Application) create(new Application(function, argument));
+    }
+
+    public Call call(Expression function, Expression[] arguments) {
+        return (Call) create(new Call(function, arguments));
+    }
+
+    public Lambda lambda(String parameter, Expression body) {
+        return (Lambda) create(new Lambda(parameter, body));
+    }
+
+    public Loop loop(Expression body) {
+        return (Loop) create(new Loop(body));
+    }
+
+    public SelfTailCall selfTailCall(Call call, String[] parameters) {
+        return (SelfTailCall) create(new SelfTailCall(call, parameters));
+    }
+
+    public RecursiveBinding recursiveBinding(String name, Expression body) {
+        return (RecursiveBinding) create(new RecursiveBinding(name, body));
+    }
+
+    public RecursiveGroup recursiveGroup(RecursiveBinding[] members, int selected) {
+        return (RecursiveGroup) create(new RecursiveGroup(members, selected));
+    }
+
+    /**
+     * Returns the interned node that is structurally equal to the expression, interning the expression if there is
+     * none yet.
+     */
+    public Expression intern(Expression expression) {
+        return intern(expression, false);
+    }
+
+    /**
+     * The structure of the expression, which is equal for structurally equal expressions and cheap to hash, e.g. to
+     * look up expressions by their structure.
+     */
+    public Structure structureOf(Expression expression) {
+        return structures.get(intern(expression));
+    }
+
+    /**
+     * The number of distinct nodes that were created.
+     */
+    public int getCreatedNodes() {
+        return createdNodes;
+    }
+
+    /**
+     * The number of nodes that were requested and replaced by an equal node that was created before.
+     */
+    public int getReusedNodes() {
+        return reusedNodes;
+    }
+
+    /**
+     * The estimated memory of the reused nodes, which would have been kept alive by the IR without sharing.
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    private Expression create(Expression node) {
+        return intern(node, true);
+    }
+
+    /**
+     * @param created whether the expression was just created by this factory, in which case it is counted and
+     *                dropped if there is an equal node already
+     */
+    private Expression intern(Expression expression, boolean created) {
+        var known = interned.get(expression);
+        if (known != null) return known;
+
+        Object[] fields;
+        Expression node;
+        switch (expression) {
+            case Variable(String name) -> {
+                fields = new Object[]{name};
+                node = expression;
+            }
+            case LocalVariable(String name, int slot) -> {
+                fields = new Object[]{name, slot};
+                node = expression;
+            }
+            case IntLiteral(long value) -> {
+                fields = new Object[]{value};
+                node = expression;
+            }
+            case BigIntLiteral(BigInteger value) -> {
+                fields = new Object[]{value};
+                node = expression;
+            }
+            case Nil ignored -> {
+                fields = new Object[0];
+                node = expression;
+            }
+            case Cons(Expression head, Expression tail) -> {
+                var internedHead = intern(head);
+                var internedTail = intern(tail);
+
+                fields = new Object[]{internedHead, internedTail};
+                node = internedHead == head && internedTail == tail
+                        ? expression
+                        : new Cons(internedHead, internedTail);
+            }
+            case Application(Expression function, Expression argument) -> {
+                var internedFunction = intern(function);
+                var internedArgument = intern(argument);
+
+                fields = new Object[]{internedFunction, internedArgument};
+                node = internedFunction == function && internedArgument == argument
+                        ? expression
+                        : new Application(internedFunction, internedArgument);
+            }
+            case Call call -> {
+                var function = intern(call.getFunction());
+                var arguments = internAll(call.getArguments());
+
+                fields = new Object[2 + arguments.length];
+                fields[0] = function;
+                fields[1] = call.getStrictness();
+                System.arraycopy(arguments, 0, fields, 2, arguments.length);
+                node = function == call.getFunction() && arguments == call.getArguments()
+                        ? expression
+                        : new Call(function, arguments, call.getStrictness());
+            }
+            case Lambda(String parameter, Expression body, int[] captures) -> {
+                var internedBody = intern(body);
+
+                fields = new Object[]{parameter, internedBody, captures};
+                node = internedBody == body ? expression : new Lambda(parameter, internedBody, captures);
+            }
+            case Loop(Expression body) -> {
+                var internedBody = intern(body);
+
+                fields = new Object[]{internedBody};
+                node = internedBody == body ? expression : new Loop(internedBody);
+            }
+            case SelfTailCall(Call call, String[] parameters, int[] slots) -> {
+                var internedCall = (Call) intern(call);
+
+                fields = new Object[]{internedCall, parameters, slots};
+                node = internedCall == call ? expression : new SelfTailCall(internedCall, parameters, slots);
+            }
+            case RecursiveBinding(String name, Expression body, int[] captures) -> {
+                var internedBody = intern(body);
+
+                fields = new Object[]{name, internedBody, captures};
+                node = internedBody == body ? expression : new RecursiveBinding(name, internedBody, captures);
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                var internedMembers = internAll(members);
+
+                fields = new Object[2 + internedMembers.length];
+                fields[0] = selected;
+                fields[1] = captures;
+                System.arraycopy(internedMembers, 0, fields, 2, internedMembers.length);
+                node = internedMembers == members
+                        ? expression
+                        : new RecursiveGroup((RecursiveBinding[]) internedMembers, selected, captures);
+            }
+            default -> {
+                interned.put(expression, expression);
+                structures.put(expression, new Structure(expression.getClass(), new Object[]{expression},
+                        System.identityHashCode(expression)));
+
+                return expression;
+            }
+        }
+
+        var structure = new Structure(expression.getClass(), fields, hashOf(expression.getClass(), fields));
+        var existing = nodes.get(structure);
+        if (existing != null) {
+            if (created) {
+                reusedNodes++;
+                savedBytes += estimatedSize(expression);
+            } else {
+                interned.put(expression, existing);
+            }
+
+            return existing;
+        }
+
+        if (created) createdNodes++;
+
+        nodes.put(structure, node);
+        interned.put(node, node);
+        if (!created) interned.put(expression, node);
+        structures.put(node, structure);
+
+        return node;
+    }
+
+    /**
+     * Interns the expressions, returning the same array if they all are interned already.
+     */
+    private Expression[] internAll(Expression[] expressions) {
+        Expression[] result = expressions;
+        for (var i = 0; i < expressions.length; i++) {
+            var expression = intern(expressions[i]);
+            if (expression == expressions[i]) continue;
+
+            if (result == expressions) result = expressions.clone();
+            result[i] = expression;
+        }
+
+        return result;
+    }
+
+    private int hashOf(Class<?> kind, Object[] fields) {
+        // The name of the class instead of the class, so the hash doesn't depend on the run
+        var hash = kind.getSimpleName().hashCode();
+        for (var field : fields) {
+            hash = 31 * hash + switch (field) {
+                case Expression child -> structures.get(child).hash;
+                case int[] array -> Arrays.hashCode(array);
+                case boolean[] array -> Arrays.hashCode(array);
+                case Object[] array -> Arrays.hashCode(array);
+                default -> field.hashCode();
+            };
+        }
+
+        return hash;
+    }
+
+    /**
+     * The shallow size of a node with compressed references, i.e. a 12 byte header and 4 bytes per reference or 8 per
+     * long, aligned to 8 bytes, including the arrays of the node that are not shared.
+     */
+    private static long estimatedSize(Expression node) {
+        return switch (node) {
+            case Call call -> 32 + align(16 + 4L * call.getArguments().length)
+                    + align(16 + call.getArguments().length);
+            case RecursiveGroup group -> 24 + align(16 + 4L * group.members().length);
+            case Application ignored -> 24;
+            case Cons ignored -> 24;
+            case Lambda ignored -> 24;
+            case RecursiveBinding ignored -> 24;
+            case SelfTailCall tailCall -> 24 + align(16 + 4L * tailCall.slots().length);
+            case IntLiteral ignored -> 24;
+            default -> 16;
+        };
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7;
+    }
+}
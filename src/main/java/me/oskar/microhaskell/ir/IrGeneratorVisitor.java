@@ -5,59 +5,145 @@ import me.oskar.microhaskell.ast.visitor.BaseVisitor;
 import me.oskar.microhaskell.error.CompileTimeError;
 import me.oskar.microhaskell.error.Error;
 import me.oskar.microhaskell.evaluation.expression.*;
+import me.oskar.microhaskell.table.Entry;
 import me.oskar.microhaskell.table.FunctionEntry;
 import me.oskar.microhaskell.table.SymbolTable;
+import me.oskar.microhaskell.table.VariableEntry;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Generates the IR of a program. Functions are generated once and referenced through a binding that is shared by all
+ * of their uses, top-level functions are bound around {@code main} and let-bound functions around the body of their
+ * let. Only non-recursive functions whose IR is no larger than the inline budget are copied into their use sites.
+ * Every parameter and function gets a name that is unique within the program, so copied code can't be captured by the
+ * bindings around its use site. Nodes are created by an {@link IrFactory}, so equal subtrees are only stored once.
+ */
 public class IrGeneratorVisitor extends BaseVisitor<Expression> {
 
-    private static final Expression Y_COMBINATOR = new Lambda("f",
-            new Application(
-                    new Lambda("x",
-                            new Application(
-                                    new Variable("f"),
-                                    new Application(new Variable("x"), new Variable("x"))
-                            )
-                    ),
-                    new Lambda("x",
-                            new Application(
-                                    new Variable("f"),
-                                    new Application(new Variable("x"), new Variable("x"))
-                            )
-                    )
-            )
-    );
-    private static final String MUTUAL_DISPATCHER_NAME = "<mutual_dispatch>";
-    private static final String MUTUAL_DISPATCHER_TAG = "<tag>";
+    public static final int DEFAULT_INLINE_BUDGET = 30;
+
+    /**
+     * State shared by all visitors generating the same program.
+     */
+    private static final class Generation {
+
+        private final int inlineBudget;
+        private final SymbolTable root;
+        private final IrFactory ir;
+        private final Map<Entry, String> names = new IdentityHashMap<>();
+        private final Map<String, Integer> nameCounts = new HashMap<>();
+        private final Map<FunctionEntry, SymbolTable> scopes = new IdentityHashMap<>();
+        private final Map<FunctionEntry, Expression> definitions = new IdentityHashMap<>();
+        private final Map<FunctionEntry, Set<FunctionEntry>> references = new IdentityHashMap<>();
+        private final Map<SymbolTable, Bindings> bindings = new IdentityHashMap<>();
+        private final Deque<FunctionEntry> generating = new ArrayDeque<>();
+        private int inlinedReferences = 0;
+        private int sharedFunctions = 0;
+
+        private Generation(int inlineBudget, SymbolTable root, IrFactory ir) {
+            this.inlineBudget = inlineBudget;
+            this.root = root;
+            this.ir = ir;
+        }
+
+        private String nameOf(Entry entry, String name) {
+            if (entry == null) return name;
+
+            var unique = names.get(entry);
+            if (unique != null) return unique;
+
+            var count = nameCounts.merge(name, 1, Integer::sum);
+            unique = count == 1 && !(root.lookup(name) instanceof VariableEntry) ? name : "%s#%d".formatted(name, count);
+            names.put(entry, unique);
+
+            return unique;
+        }
+
+        private boolean isBuiltin(Entry entry, String name) {
+            return entry instanceof VariableEntry && root.lookup(name) == entry;
+        }
+    }
 
+    /**
+     * The functions of one scope that are shared by their uses, i.e. of the program or of one generated let.
+     */
+    private static final class Bindings {
+
+        private final SymbolTable table;
+        private final Set<FunctionEntry> recursionTargets;
+        private final Set<FunctionEntry> shared = new LinkedHashSet<>();
+
+        private Bindings(SymbolTable table, Set<FunctionEntry> recursionTargets) {
+            this.table = table;
+            this.recursionTargets = recursionTargets;
+        }
+    }
+
+    private final Generation generation;
     private final SymbolTable symbolTable;
-    private final Set<String> recursionTargets;
-    private final Map<Integer, Expression> dispatchedLambdaBodies;
+    private final Set<FunctionEntry> recursionTargets;
     private final Error error;
 
     public IrGeneratorVisitor(SymbolTable symbolTable, Error error) {
-        this(symbolTable, new HashSet<>(), new HashMap<>(), error);
+        this(symbolTable, DEFAULT_INLINE_BUDGET, error);
+    }
+
+    public IrGeneratorVisitor(SymbolTable symbolTable, int inlineBudget, Error error) {
+        this(symbolTable, inlineBudget, new IrFactory(), error);
     }
 
-    public IrGeneratorVisitor(SymbolTable symbolTable,
-                              Set<String> recursionTargets,
-                              Map<Integer, Expression> dispatchedLambdaBodies,
-                              Error error) {
+    /**
+     * @param ir creates the nodes of the IR, sharing equal ones
+     */
+    public IrGeneratorVisitor(SymbolTable symbolTable, int inlineBudget, IrFactory ir, Error error) {
+        this(new Generation(inlineBudget, symbolTable, ir), symbolTable, new HashSet<>(), error);
+    }
+
+    private IrGeneratorVisitor(Generation generation,
+                               SymbolTable symbolTable,
+                               Set<FunctionEntry> recursionTargets,
+                               Error error) {
+        this.generation = generation;
         this.symbolTable = symbolTable;
         this.recursionTargets = recursionTargets;
-        this.dispatchedLambdaBodies = dispatchedLambdaBodies;
         this.error = error;
     }
 
+    /**
+     * The number of references to functions that were replaced by a copy of the function.
+     */
+    public int getInlinedReferences() {
+        return generation.inlinedReferences;
+    }
+
+    /**
+     * The number of bindings generated for functions that are shared by their uses.
+     */
+    public int getSharedFunctions() {
+        return generation.sharedFunctions;
+    }
+
+    private IrGeneratorVisitor local(SymbolTable localTable, Set<FunctionEntry> localRecursionTargets) {
+        return new IrGeneratorVisitor(generation, localTable, localRecursionTargets, error);
+    }
+
     private Expression generateFunctionBody(FunctionNode function, IrGeneratorVisitor visitor) {
         var body = function.getBody().accept(visitor);
 
         for (var p : function.getParameters().reversed()) {
-            body = new Lambda(((IdentifierNode) p).getName(), body);
+            var name = ((IdentifierNode) p).getName();
+            body = generation.ir.lambda(generation.nameOf(visitor.symbolTable.lookup(name), name), body);
         }
 
         return body;
@@ -66,10 +152,7 @@ public class IrGeneratorVisitor extends BaseVisitor<Expression> {
     @Override
     public Expression visit(AnonymousFunctionNode anonymousFunctionNode) {
         if (symbolTable != anonymousFunctionNode.getLocalTable()) {
-            var localIrGeneratorVisitor = new IrGeneratorVisitor(anonymousFunctionNode.getLocalTable(), recursionTargets,
-                    dispatchedLambdaBodies, error);
-
-            return anonymousFunctionNode.accept(localIrGeneratorVisitor);
+            return anonymousFunctionNode.accept(local(anonymousFunctionNode.getLocalTable(), recursionTargets));
         }
 
         return generateFunctionBody(anonymousFunctionNode, this);
@@ -77,99 +160,303 @@ public class IrGeneratorVisitor extends BaseVisitor<Expression> {
 
     @Override
     public Expression visit(FunctionApplicationNode functionApplicationNode) {
-        return new Application(
-                functionApplicationNode.getFunction().accept(this),
-                functionApplicationNode.getArgument().accept(this)
-        );
+        var arguments = new ArrayList<ExpressionNode>();
+
+        ExpressionNode function = functionApplicationNode;
+        while (function instanceof FunctionApplicationNode application) {
+            arguments.addFirst(application.getArgument());
+            function = application.getFunction();
+        }
+
+        // Calls of functions with known arity bind all of their arguments at once
+        var arity = Math.min(knownArity(function), arguments.size());
+        Expression result;
+        if (arity >= 1) {
+            result = generation.ir.call(function.accept(this), arguments.subList(0, arity).stream()
+                    .map(a -> a.accept(this))
+                    .toArray(Expression[]::new));
+        } else {
+            arity = 0;
+            result = function.accept(this);
+        }
+
+        for (var a : arguments.subList(arity, arguments.size())) {
+            result = generation.ir.application(result, a.accept(this));
+        }
+
+        return result;
+    }
+
+    private int knownArity(ExpressionNode function) {
+        if (function instanceof AnonymousFunctionNode anonymousFunctionNode) {
+            return anonymousFunctionNode.getParameters().size();
+        }
+
+        if (function instanceof IdentifierNode identifierNode
+                && symbolTable.lookup(identifierNode.getName()) instanceof FunctionEntry fe) {
+            return fe.getNode().getParameters().size();
+        }
+
+        return 0;
     }
 
     @Override
     public Expression visit(FunctionDefinitionNode functionDefinitionNode) {
-        var entry = (FunctionEntry) symbolTable.lookup(functionDefinitionNode.getName());
+        return generateDefinition((FunctionEntry) symbolTable.lookup(functionDefinitionNode.getName()));
+    }
+
+    private Expression generateDefinition(FunctionEntry entry) {
+        if (entry.isAppliedMutuallyRecursively()) {
+            return generateRecursiveGroup(entry);
+        }
 
         var localRecursionTargets = recursionTargets;
-        if (entry.isAppliedSelfRecursively() || entry.isAppliedMutuallyRecursively()) {
+        if (entry.isAppliedSelfRecursively()) {
             localRecursionTargets = new HashSet<>(recursionTargets);
-            localRecursionTargets.add(functionDefinitionNode.getName());
+            localRecursionTargets.add(entry);
         }
 
-        var localIrGeneratorVisitor = new IrGeneratorVisitor(entry.getLocalTable(), localRecursionTargets,
-                dispatchedLambdaBodies, error);
+        var localIrGeneratorVisitor = local(entry.getLocalTable(), localRecursionTargets);
 
-        var body = generateFunctionBody(functionDefinitionNode, localIrGeneratorVisitor);
+        var node = entry.getNode();
+        var body = generateFunctionBody(node, localIrGeneratorVisitor);
 
-        if (entry.isAppliedMutuallyRecursively()) {
-            dispatchedLambdaBodies.put(entry.getDispatchId(), body);
+        if (entry.isAppliedSelfRecursively()) {
+            var name = generation.nameOf(entry, node.getName());
+            var parameters = node.getParameters().stream()
+                    .map(p -> ((IdentifierNode) p).getName())
+                    .map(p -> generation.nameOf(entry.getLocalTable().lookup(p), p))
+                    .toArray(String[]::new);
 
-            return new Application(new Variable(MUTUAL_DISPATCHER_NAME),
-                    new IntLiteral(functionDefinitionNode.getDispatchId()));
+            return generation.ir.recursiveBinding(name, loopify(name, parameters, body));
         }
 
-        if (entry.isAppliedSelfRecursively()) {
-            return new Application(Y_COMBINATOR, new Lambda(functionDefinitionNode.getName(), body));
+        return body;
+    }
+
+    /**
+     * Wraps the innermost body of a self-recursive function in a {@link Loop} if the function calls itself in tail
+     * position, i.e. as the body itself or in a branch of an {@code if} in tail position.
+     */
+    private Expression loopify(String name, String[] parameters, Expression body) {
+        if (parameters.length == 0) return body;
+
+        var innermost = body;
+        for (var i = 0; i < parameters.length; i++) {
+            innermost = ((Lambda) innermost).body();
         }
 
-        return body;
+        var loopBody = rewriteTailCalls(innermost, name, parameters);
+        if (loopBody == innermost) return body;
+
+        Expression result = generation.ir.loop(loopBody);
+        for (var i = parameters.length - 1; i >= 0; i--) {
+            result = generation.ir.lambda(parameters[i], result);
+        }
+
+        return result;
+    }
+
+    private Expression rewriteTailCalls(Expression expression, String name, String[] parameters) {
+        if (expression instanceof Call call && call.getFunction() instanceof Variable(String function)
+                && function.equals(name) && call.getArguments().length == parameters.length) {
+            return generation.ir.selfTailCall(call, parameters);
+        }
+
+        if (expression instanceof Application(
+                Application(Application(Variable(String function), Expression condition), Expression consequence),
+                Expression alternative) && function.equals("if")) {
+            var rewrittenConsequence = rewriteTailCalls(consequence, name, parameters);
+            var rewrittenAlternative = rewriteTailCalls(alternative, name, parameters);
+            if (rewrittenConsequence == consequence && rewrittenAlternative == alternative) return expression;
+
+            return generateIf(condition, rewrittenConsequence, rewrittenAlternative);
+        }
+
+        return expression;
+    }
+
+    private Expression generateRecursiveGroup(FunctionEntry entry) {
+        var group = entry.getRecursionGroup();
+
+        var localRecursionTargets = new HashSet<>(recursionTargets);
+        for (var member : group) {
+            localRecursionTargets.add(member);
+        }
+
+        var members = new RecursiveBinding[group.size()];
+        for (var i = 0; i < members.length; i++) {
+            var member = group.get(i);
+            var localIrGeneratorVisitor = local(member.getLocalTable(), localRecursionTargets);
+
+            members[i] = generation.ir.recursiveBinding(generation.nameOf(member, member.getNode().getName()),
+                    generateFunctionBody(member.getNode(), localIrGeneratorVisitor));
+        }
+
+        return generation.ir.recursiveGroup(members, group.indexOf(entry));
     }
 
     @Override
     public Expression visit(IdentifierNode identifierNode) {
-        var entry = symbolTable.lookup(identifierNode.getName());
+        var name = identifierNode.getName();
+        var entry = symbolTable.lookup(name);
 
-        if (!(entry instanceof FunctionEntry fe)) return new Variable(identifierNode.getName());
+        if (!(entry instanceof FunctionEntry fe)) {
+            return generation.ir.variable(generation.isBuiltin(entry, name) ? name : generation.nameOf(entry, name));
+        }
 
-        if (!recursionTargets.contains(identifierNode.getName())) return fe.getNode().accept(this);
+        if (recursionTargets.contains(fe)) return generation.ir.variable(generation.nameOf(fe, name));
 
-        if (fe.isAppliedMutuallyRecursively()) {
-            return new Application(
-                    new Variable(MUTUAL_DISPATCHER_NAME),
-                    new IntLiteral(fe.getDispatchId())
-            );
+        generation.scopes.putIfAbsent(fe, symbolTable.scopeOf(name));
+
+        var definition = definitionOf(fe);
+        if (isInlinable(fe, definition)) {
+            generation.inlinedReferences++;
+            use(fe, false);
+
+            return definition;
         }
 
-        return new Variable(identifierNode.getName());
+        use(fe, true);
+
+        return generation.ir.variable(generation.nameOf(fe, name));
     }
 
+    /**
+     * The IR of a function, generated in the scope that defines it. Since all names are unique the same IR can be
+     * used wherever the function is referenced.
+     */
+    private Expression definitionOf(FunctionEntry entry) {
+        var definition = generation.definitions.get(entry);
+        if (definition != null) return definition;
+
+        var bindings = bindingsOf(entry);
+
+        generation.generating.push(entry);
+        generation.references.put(entry, new HashSet<>());
+        definition = local(bindings.table, bindings.recursionTargets).generateDefinition(entry);
+        generation.generating.pop();
+
+        generation.definitions.put(entry, definition);
+
+        return definition;
+    }
+
+    private boolean isInlinable(FunctionEntry entry, Expression definition) {
+        if (entry.isAppliedSelfRecursively() || entry.isAppliedMutuallyRecursively()) return false;
+
+        // Copying a function without parameters would evaluate it again at every use
+        if (entry.getNode().getParameters().isEmpty() && !isValue(definition)) return false;
+
+        return IrSize.of(definition) <= generation.inlineBudget;
+    }
+
+    private static boolean isValue(Expression expression) {
+        return isConstant(expression) || expression instanceof Lambda || expression instanceof Variable;
+    }
+
+    /**
+     * Records that the function is referenced by the functions that are currently generated and makes sure that the
+     * functions its IR refers to are bound in the scopes that are currently generated.
+     */
+    private void use(FunctionEntry entry, boolean shared) {
+        var references = generation.references.get(entry);
+
+        for (var reference : references) {
+            var bindings = generation.bindings.get(generation.scopes.get(reference));
+            if (bindings != null) bindings.shared.add(reference);
+        }
+
+        if (shared) bindingsOf(entry).shared.add(entry);
+
+        for (var function : generation.generating) {
+            if (function == entry) continue;
+
+            generation.references.get(function).addAll(references);
+            if (shared) generation.references.get(function).add(entry);
+        }
+    }
+
+    private Bindings bindingsOf(FunctionEntry entry) {
+        var bindings = generation.bindings.get(generation.scopes.get(entry));
+        if (bindings == null) {
+            throw new IllegalStateException("Function referenced outside of its scope: %s"
+                    .formatted(entry.getNode().getName()));
+        }
+
+        return bindings;
+    }
+
+    /**
+     * Binds the shared functions of a scope around its body, the functions that others refer to outermost.
+     */
+    private Expression bind(Bindings bindings, Expression body) {
+        var ordered = new ArrayList<FunctionEntry>();
+        var visited = Collections.newSetFromMap(new IdentityHashMap<FunctionEntry, Boolean>());
+        for (var entry : bindings.shared) {
+            order(entry, bindings, visited, ordered);
+        }
+
+        for (var entry : ordered.reversed()) {
+            body = generation.ir.application(
+                    generation.ir.lambda(generation.nameOf(entry, entry.getNode().getName()), body),
+                    generation.definitions.get(entry));
+        }
+
+        generation.sharedFunctions += ordered.size();
+
+        return body;
+    }
+
+    private void order(FunctionEntry entry, Bindings bindings, Set<FunctionEntry> visited,
+                       List<FunctionEntry> ordered) {
+        if (!visited.add(entry)) return;
+
+        for (var reference : generation.references.get(entry)) {
+            if (bindings.shared.contains(reference)) order(reference, bindings, visited, ordered);
+        }
+
+        ordered.add(entry);
+    }
 
     @Override
     public Expression visit(IfNode ifNode) {
-        return new Application(new Application(new Application(new Variable("if"),
-                ifNode.getCondition().accept(this)),
-                ifNode.getConsequence().accept(this)),
+        return generateIf(ifNode.getCondition().accept(this), ifNode.getConsequence().accept(this),
                 ifNode.getAlternative().accept(this));
     }
 
+    private Expression generateIf(Expression condition, Expression consequence, Expression alternative) {
+        var ir = generation.ir;
+        return ir.application(ir.application(ir.application(ir.variable("if"), condition), consequence),
+                alternative);
+    }
+
     @Override
     public Expression visit(IntLiteralNode intLiteralNode) {
-        return new IntLiteral(intLiteralNode.getValue());
+        return generation.ir.literal(intLiteralNode.getValue());
     }
 
     public Expression visit(LetNode letNode) {
         if (symbolTable != letNode.getLocalTable()) {
-            var localIrGeneratorVisitor = new IrGeneratorVisitor(letNode.getLocalTable(), recursionTargets,
-                    dispatchedLambdaBodies, error);
-
-            return letNode.accept(localIrGeneratorVisitor);
+            return letNode.accept(local(letNode.getLocalTable(), recursionTargets));
         }
 
-        var bindings = letNode.getBindings();
-
-        for (var b : bindings) {
+        for (var b : letNode.getBindings()) {
             if (!(b instanceof FunctionDefinitionNode fd)) continue;
 
-            var entry = (FunctionEntry) letNode.getLocalTable().lookup(fd.getName());
+            var entry = (FunctionEntry) symbolTable.lookup(fd.getName());
             entry.setNode(fd);
         }
 
-        var body = letNode.getExpression().accept(this);
+        var bindings = new Bindings(symbolTable, recursionTargets);
+        var enclosing = generation.bindings.put(symbolTable, bindings);
 
-        // NOTE: Potential optimization: Only generate binding when necessary
-        // Only generate when not applied mutually recursively
-        // ALso check children
-        for (var b : bindings.reversed()) {
-            if (!(b instanceof FunctionDefinitionNode fd)) continue;
+        var body = bind(bindings, letNode.getExpression().accept(this));
 
-            body = new Application(new Lambda(fd.getName(), body), b.accept(this));
+        if (enclosing != null) {
+            generation.bindings.put(symbolTable, enclosing);
+        } else {
+            generation.bindings.remove(symbolTable);
         }
 
         return body;
@@ -177,16 +464,25 @@ public class IrGeneratorVisitor extends BaseVisitor<Expression> {
 
     @Override
     public Expression visit(ListLiteralNode listLiteralNode) {
-        var nilEntry = (FunctionEntry) symbolTable.lookup("nil");
-        var consEntry = (FunctionEntry) symbolTable.lookup("cons");
-
-        Expression previous = nilEntry.getNode().accept(this);
+        Expression list = Nil.NIL;
         for (var v : listLiteralNode.getValue().reversed()) {
-            var appliedValue = new Application(consEntry.getNode().accept(this), v.accept(this));
-            previous = new Application(appliedValue, previous);
+            var value = v.accept(this);
+
+            // Constant suffixes of the literal are built once instead of on every evaluation
+            if (isConstant(value) && isConstant(list)) {
+                list = generation.ir.cons(value, list);
+            } else {
+                var ir = generation.ir;
+                list = ir.application(ir.application(ir.variable("cons"), value), list);
+            }
         }
 
-        return previous;
+        return list;
+    }
+
+    private static boolean isConstant(Expression expression) {
+        return expression instanceof IntLiteral || expression instanceof BigIntLiteral
+                || expression instanceof Cons || expression instanceof Nil;
     }
 
     @Override
@@ -207,40 +503,12 @@ public class IrGeneratorVisitor extends BaseVisitor<Expression> {
             throw error.mainFunctionMissing();
         }
 
-        var body = main.get().accept(this);
-
-        if (dispatchedLambdaBodies.isEmpty()) return body;
-
-        Expression dispatcherBody = null;
-
-        for (var e : dispatchedLambdaBodies.entrySet()) {
-            if (dispatcherBody == null) {
-                dispatcherBody = e.getValue();
-            } else {
-                var dispatchId = e.getKey();
-
-                var condition = new Application(
-                        new Application(new Variable("=="), new Variable(MUTUAL_DISPATCHER_TAG)),
-                        new IntLiteral(dispatchId)
-                );
-
-                dispatcherBody = new Application(
-                        new Application(
-                                new Application(new Variable("if"), condition),
-                                e.getValue()),
-                        dispatcherBody);
-            }
+        // The functions of a shared prelude are bound together with the program that extends it
+        var bindings = new Bindings(symbolTable, recursionTargets);
+        for (var table = symbolTable; table != null; table = table.isExtension() ? table.getParent() : null) {
+            generation.bindings.put(table, bindings);
         }
 
-        dispatcherBody = new Lambda(MUTUAL_DISPATCHER_TAG, dispatcherBody);
-
-        var dispatcher = new Application(Y_COMBINATOR, new Lambda(MUTUAL_DISPATCHER_NAME, dispatcherBody));
-
-        body = new Application(
-                new Lambda(MUTUAL_DISPATCHER_NAME, body),
-                dispatcher
-        );
-
-        return body;
+        return bind(bindings, main.get().accept(this));
     }
 }
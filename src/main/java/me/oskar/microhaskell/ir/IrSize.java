@@ -0,0 +1,39 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+/**
+ * Counts the nodes of the IR, which is what the inlining budget of {@link IrGeneratorVisitor} is measured in.
+ */
+public final class IrSize {
+
+    private IrSize() {
+    }
+
+    public static int of(Expression expression) {
+        return switch (expression) {
+            case Lambda(String ignored, Expression body, int[] captures) -> 1 + of(body);
+            case Application(Expression function, Expression argument) -> 1 + of(function) + of(argument);
+            case Call call -> {
+                var size = 1 + of(call.getFunction());
+                for (var argument : call.getArguments()) {
+                    size += of(argument);
+                }
+
+                yield size;
+            }
+            case RecursiveBinding(String ignored, Expression body, int[] captures) -> 1 + of(body);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                var size = 1;
+                for (var member : members) {
+                    size += of(member);
+                }
+
+                yield size;
+            }
+            case Loop(Expression body) -> 1 + of(body);
+            case SelfTailCall tailCall -> of(tailCall.call());
+            default -> 1;
+        };
+    }
+}
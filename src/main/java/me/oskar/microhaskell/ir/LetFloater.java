@@ -0,0 +1,411 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+import me.oskar.microhaskell.ir.IrFactory.Structure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares the work of expressions through let bindings, i.e. redexes {@code (\let#n. body) expression}:
+ * <ul>
+ *     <li>An expression inside a function that doesn't depend on its parameters is bound outside of the function
+ *     (full laziness), so it is evaluated at most once instead of on every call.</li>
+ *     <li>An expression that occurs more than once in the body of a function or in the program is bound once
+ *     (common subexpression elimination).</li>
+ * </ul>
+ * A lambda chain is treated as one function, so calls still bind all of their arguments at once and loops stay
+ * directly inside of their function. Nothing is bound inside of a loop, where a binding would come between the loop
+ * and its tail calls.
+ * <p>
+ * To not cause space leaks, only saturated applications of builtins are bound whose result can't hold on to more
+ * memory than their arguments already do: arithmetic and comparisons, which result in numbers, and {@code length},
+ * {@code sum}, {@code null}, {@code elem}, {@code head} and {@code tail}, which result in numbers or parts of the list
+ * they take. A binding that outlives a call therefore never keeps a list alive that the call built.
+ */
+public class LetFloater {
+
+    private static final Set<String> SMALL_RESULTS = Set.of("length", "sum", "null", "elem", "head", "tail");
+
+    private record Binding(String name, Expression expression) {
+    }
+
+    private final Map<String, Expression> globals;
+    private final IrFactory ir;
+
+    private int bindings = 0;
+    private int floatedExpressions = 0;
+    private int sharedExpressions = 0;
+
+    public LetFloater(Map<String, Expression> globals) {
+        this(globals, new IrFactory());
+    }
+
+    /**
+     * @param ir compares expressions by their structure
+     */
+    public LetFloater(Map<String, Expression> globals, IrFactory ir) {
+        this.globals = globals;
+        this.ir = ir;
+    }
+
+    public Expression transform(Expression program) {
+        return shareCommon(rewrite(program));
+    }
+
+    /**
+     * The number of expressions that were bound outside of the function they occur in.
+     */
+    public int getFloatedExpressions() {
+        return floatedExpressions;
+    }
+
+    /**
+     * The number of occurrences of expressions that were replaced by a binding of an equal expression.
+     */
+    public int getSharedExpressions() {
+        return sharedExpressions;
+    }
+
+    private Expression rewrite(Expression expression) {
+        return switch (expression) {
+            case Lambda lambda -> {
+                var floated = new ArrayList<Binding>();
+                yield bind(floated, rewriteFunction(lambda, Set.of(), floated));
+            }
+            case RecursiveBinding(String name, Expression body, int[] ignored) -> {
+                if (!(body instanceof Lambda lambda)) yield new RecursiveBinding(name, rewrite(body));
+
+                var floated = new ArrayList<Binding>();
+                yield bind(floated, new RecursiveBinding(name, rewriteFunction(lambda, Set.of(name), floated)));
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                var names = new HashSet<String>();
+                for (var m : members) {
+                    names.add(m.name());
+                }
+
+                var floated = new ArrayList<Binding>();
+                var rewrittenMembers = new RecursiveBinding[members.length];
+                for (var i = 0; i < members.length; i++) {
+                    var m = members[i];
+                    rewrittenMembers[i] = new RecursiveBinding(m.name(), m.body() instanceof Lambda lambda
+                            ? rewriteFunction(lambda, names, floated)
+                            : rewrite(m.body()));
+                }
+
+                yield bind(floated, new RecursiveGroup(rewrittenMembers, selected));
+            }
+            // The lambda of a redex is entered once, there is nothing to gain by floating out of it
+            case Application(Lambda lambda, Expression argument) ->
+                    new Application(rewriteEntered(lambda, 1), rewrite(argument));
+            case Application(Expression function, Expression argument) ->
+                    new Application(rewrite(function), rewrite(argument));
+            case Call call -> new Call(call.getFunction() instanceof Lambda lambda
+                    ? rewriteEntered(lambda, call.getArguments().length)
+                    : rewrite(call.getFunction()), rewriteAll(call.getArguments()));
+            case Loop(Expression body) -> new Loop(rewrite(body));
+            case SelfTailCall(Call call, String[] parameters, int[] ignored) ->
+                    new SelfTailCall(new Call(call.getFunction(), rewriteAll(call.getArguments())), parameters);
+            default -> expression;
+        };
+    }
+
+    private Expression[] rewriteAll(Expression[] expressions) {
+        var rewritten = new Expression[expressions.length];
+        for (var i = 0; i < expressions.length; i++) {
+            rewritten[i] = rewrite(expressions[i]);
+        }
+
+        return rewritten;
+    }
+
+    private Lambda rewriteEntered(Lambda lambda, int arguments) {
+        if (arguments > 1 && lambda.body() instanceof Lambda body) {
+            return new Lambda(lambda.parameter(), rewriteEntered(body, arguments - 1));
+        }
+
+        return new Lambda(lambda.parameter(), rewrite(lambda.body()));
+    }
+
+    /**
+     * Rewrites a lambda chain and adds the bindings of the expressions it doesn't depend on to {@code floated}.
+     *
+     * @param bound names bound together with the chain, i.e. the names of the recursive functions it belongs to
+     */
+    private Lambda rewriteFunction(Lambda lambda, Set<String> bound, List<Binding> floated) {
+        var parameters = new ArrayList<String>();
+        Expression body = lambda;
+        while (body instanceof Lambda(String parameter, Expression lambdaBody, int[] ignored)) {
+            parameters.add(parameter);
+            body = lambdaBody;
+        }
+
+        body = rewrite(body);
+
+        var functionBound = new HashSet<>(bound);
+        functionBound.addAll(parameters);
+
+        var invariant = new LinkedHashMap<Structure, List<Expression>>();
+        collectInvariant(body, functionBound, invariant);
+
+        var replacements = new HashMap<Structure, String>();
+        for (var occurrences : invariant.entrySet()) {
+            var binding = new Binding(freshName(), occurrences.getValue().getFirst());
+            floated.add(binding);
+            replacements.put(occurrences.getKey(), binding.name());
+
+            floatedExpressions++;
+            sharedExpressions += occurrences.getValue().size() - 1;
+        }
+
+        body = replace(body, replacements, new HashSet<>());
+
+        if (!(body instanceof Loop)) {
+            body = shareCommon(body);
+        }
+
+        for (var parameter : parameters.reversed()) {
+            body = new Lambda(parameter, body);
+        }
+
+        return (Lambda) body;
+    }
+
+    /**
+     * Collects the outermost bindable expressions that don't refer to any of the given names or to a name bound
+     * inside of the expression, grouped by their structure.
+     */
+    private void collectInvariant(Expression expression, Set<String> bound,
+                                  Map<Structure, List<Expression>> invariant) {
+        if (isBindable(expression) && isFreeOf(expression, bound)) {
+            invariant.computeIfAbsent(ir.structureOf(expression), k -> new ArrayList<>()).add(expression);
+            return;
+        }
+
+        forEachChild(expression, bound, (child, childBound) -> collectInvariant(child, childBound, invariant));
+    }
+
+    /**
+     * Binds the bindable expressions that occur more than once around the expression, outermost occurrences first.
+     */
+    private Expression shareCommon(Expression expression) {
+        var counts = new HashMap<Structure, Integer>();
+        count(expression, new HashSet<>(), Set.of(), counts);
+
+        var common = new HashSet<Structure>();
+        counts.forEach((key, count) -> {
+            if (count > 1) common.add(key);
+        });
+
+        // Occurrences inside of another common expression are shared along with it
+        while (true) {
+            var outermost = new HashMap<Structure, Integer>();
+            count(expression, new HashSet<>(), common, outermost);
+
+            var stillCommon = new HashSet<Structure>();
+            outermost.forEach((key, count) -> {
+                if (count > 1 && common.contains(key)) stillCommon.add(key);
+            });
+
+            if (stillCommon.equals(common)) break;
+
+            common.retainAll(stillCommon);
+        }
+
+        if (common.isEmpty()) return expression;
+
+        var replacements = new HashMap<Structure, String>();
+        var first = new LinkedHashMap<Structure, Expression>();
+        collectCommon(expression, new HashSet<>(), common, first);
+        for (var key : first.keySet()) {
+            replacements.put(key, freshName());
+        }
+
+        var shared = new ArrayList<Binding>();
+        first.forEach((key, e) -> shared.add(new Binding(replacements.get(key), e)));
+
+        var counted = new HashMap<Structure, Integer>();
+        count(expression, new HashSet<>(), common, counted);
+        counted.forEach((key, count) -> {
+            if (common.contains(key)) sharedExpressions += count - 1;
+        });
+
+        return bind(shared, replace(expression, replacements, new HashSet<>()));
+    }
+
+    /**
+     * Counts the bindable expressions that only refer to names bound outside of the expression, without looking inside
+     * of the ones in {@code outermost}.
+     */
+    private void count(Expression expression, Set<String> bound, Set<Structure> outermost,
+                       Map<Structure, Integer> counts) {
+        if (isBindable(expression) && isFreeOf(expression, bound)) {
+            var key = ir.structureOf(expression);
+            counts.merge(key, 1, Integer::sum);
+            if (outermost.contains(key)) return;
+        }
+
+        forEachChild(expression, bound, (child, childBound) -> count(child, childBound, outermost, counts));
+    }
+
+    private void collectCommon(Expression expression, Set<String> bound, Set<Structure> common,
+                               Map<Structure, Expression> first) {
+        if (isBindable(expression) && isFreeOf(expression, bound)) {
+            var key = ir.structureOf(expression);
+            if (common.contains(key)) {
+                first.putIfAbsent(key, expression);
+                return;
+            }
+        }
+
+        forEachChild(expression, bound, (child, childBound) -> collectCommon(child, childBound, common, first));
+    }
+
+    /**
+     * Replaces the outermost bindable expressions with one of the given structures that don't refer to a name bound
+     * inside of the expression by the variable of their binding.
+     */
+    private Expression replace(Expression expression, Map<Structure, String> replacements, Set<String> bound) {
+        if (replacements.isEmpty()) return expression;
+
+        if (isBindable(expression) && isFreeOf(expression, bound)) {
+            var name = replacements.get(ir.structureOf(expression));
+            if (name != null) return new Variable(name);
+        }
+
+        return switch (expression) {
+            case Lambda(String parameter, Expression body, int[] ignored) ->
+                    new Lambda(parameter, replace(body, replacements, with(bound, parameter)));
+            case RecursiveBinding(String name, Expression body, int[] ignored) ->
+                    new RecursiveBinding(name, replace(body, replacements, with(bound, name)));
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                var groupBound = new HashSet<>(bound);
+                for (var m : members) {
+                    groupBound.add(m.name());
+                }
+
+                var replacedMembers = new RecursiveBinding[members.length];
+                for (var i = 0; i < members.length; i++) {
+                    replacedMembers[i] = new RecursiveBinding(members[i].name(),
+                            replace(members[i].body(), replacements, groupBound));
+                }
+
+                yield new RecursiveGroup(replacedMembers, selected);
+            }
+            case Application(Expression function, Expression argument) ->
+                    new Application(replace(function, replacements, bound), replace(argument, replacements, bound));
+            case Call call -> new Call(replace(call.getFunction(), replacements, bound),
+                    replaceAll(call.getArguments(), replacements, bound));
+            case Loop(Expression body) -> new Loop(replace(body, replacements, bound));
+            case SelfTailCall(Call call, String[] parameters, int[] ignored) -> new SelfTailCall(
+                    new Call(call.getFunction(), replaceAll(call.getArguments(), replacements, bound)), parameters);
+            default -> expression;
+        };
+    }
+
+    private Expression[] replaceAll(Expression[] expressions, Map<Structure, String> replacements,
+                                    Set<String> bound) {
+        var replaced = new Expression[expressions.length];
+        for (var i = 0; i < expressions.length; i++) {
+            replaced[i] = replace(expressions[i], replacements, bound);
+        }
+
+        return replaced;
+    }
+
+    private interface ChildVisitor {
+
+        void visit(Expression child, Set<String> bound);
+    }
+
+    private static void forEachChild(Expression expression, Set<String> bound, ChildVisitor visitor) {
+        switch (expression) {
+            case Lambda(String parameter, Expression body, int[] ignored) -> visitor.visit(body, with(bound, parameter));
+            case RecursiveBinding(String name, Expression body, int[] ignored) -> visitor.visit(body, with(bound, name));
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                var groupBound = new HashSet<>(bound);
+                for (var m : members) {
+                    groupBound.add(m.name());
+                }
+
+                for (var m : members) {
+                    visitor.visit(m.body(), groupBound);
+                }
+            }
+            case Application(Expression function, Expression argument) -> {
+                visitor.visit(function, bound);
+                visitor.visit(argument, bound);
+            }
+            case Call call -> {
+                visitor.visit(call.getFunction(), bound);
+                for (var argument : call.getArguments()) {
+                    visitor.visit(argument, bound);
+                }
+            }
+            case Loop(Expression body) -> visitor.visit(body, bound);
+            case SelfTailCall tailCall -> {
+                for (var argument : tailCall.call().getArguments()) {
+                    visitor.visit(argument, bound);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private boolean isBindable(Expression expression) {
+        var arguments = 0;
+        var function = expression;
+        while (true) {
+            if (function instanceof Application(Expression f, Expression ignored)) {
+                arguments++;
+                function = f;
+            } else if (function instanceof Call call) {
+                arguments += call.getArguments().length;
+                function = call.getFunction();
+            } else {
+                break;
+            }
+        }
+
+        return function instanceof Variable(String name) && globals.get(name) instanceof BuiltinFunction bf
+                && arguments == bf.getArity() && (bf.getIntOperator() != null || SMALL_RESULTS.contains(name));
+    }
+
+    private static boolean isFreeOf(Expression expression, Set<String> names) {
+        if (names.isEmpty()) return true;
+
+        for (var name : FreeVariables.of(expression)) {
+            if (names.contains(name)) return false;
+        }
+
+        return true;
+    }
+
+    private String freshName() {
+        // Keywords can't be names in a program
+        return "let#%d".formatted(++bindings);
+    }
+
+    private static Expression bind(List<Binding> bindings, Expression body) {
+        for (var binding : bindings.reversed()) {
+            body = new Application(new Lambda(binding.name(), body), binding.expression());
+        }
+
+        return body;
+    }
+
+    private static Set<String> with(Set<String> names, String name) {
+        if (names.contains(name)) return names;
+
+        var extended = new HashSet<>(names);
+        extended.add(name);
+        return extended;
+    }
+}
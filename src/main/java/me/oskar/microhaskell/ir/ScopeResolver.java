@@ -0,0 +1,171 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ScopeResolver {
+
+    private static class Scope {
+
+        private final String parameter;
+        private final List<String> members;
+        private final Scope parent;
+        private final List<String> captured = new ArrayList<>();
+
+        private Scope(String parameter, Scope parent) {
+            this(parameter, List.of(), parent);
+        }
+
+        private Scope(String parameter, List<String> members, Scope parent) {
+            this.parameter = parameter;
+            this.members = members;
+            this.parent = parent;
+            captured.addAll(members);
+        }
+
+        private boolean binds(String name) {
+            if (name.equals(parameter) || members.contains(name)) return true;
+
+            return parent != null && parent.binds(name);
+        }
+
+        private int slotOf(String name) {
+            if (name.equals(parameter)) return 0;
+
+            var index = captured.indexOf(name);
+            if (index < 0) {
+                captured.add(name);
+                index = captured.size() - 1;
+            }
+
+            return index + 1;
+        }
+
+        private int slotIfBound(String name) {
+            if (name.equals(parameter)) return 0;
+
+            var index = captured.indexOf(name);
+            return index < 0 ? -1 : index + 1;
+        }
+    }
+
+    private final Map<String, Expression> globals;
+    private Scope scope = null;
+    private List<SelfTailCall> tailCalls = new ArrayList<>();
+
+    public ScopeResolver(Map<String, Expression> globals) {
+        this.globals = globals;
+    }
+
+    public Expression resolve(Expression expression) {
+        return switch (expression) {
+            case Variable(String name) -> resolveVariable(name);
+            case Lambda(String parameter, Expression body, int[] ignored) -> {
+                var resolvedBody = resolveInScope(parameter, body);
+                yield new Lambda(parameter, resolvedBody.body(), resolvedBody.captures());
+            }
+            case RecursiveBinding(String name, Expression body, int[] ignored) -> {
+                var resolvedBody = resolveInScope(name, body);
+                yield new RecursiveBinding(name, resolvedBody.body(), resolvedBody.captures());
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) ->
+                    resolveGroup(members, selected);
+            case Application(Expression function, Expression argument) ->
+                    new Application(resolve(function), resolve(argument));
+            case Call call -> new Call(resolve(call.getFunction()), resolveAll(call.getArguments()));
+            case Loop(Expression body) -> resolveLoop(body);
+            case SelfTailCall(Call call, String[] parameters, int[] ignored) -> {
+                var tailCall = new SelfTailCall((Call) resolve(call), parameters);
+                tailCalls.add(tailCall);
+                yield tailCall;
+            }
+            default -> expression;
+        };
+    }
+
+    private Expression resolveLoop(Expression body) {
+        var enclosingTailCalls = tailCalls;
+        tailCalls = new ArrayList<>();
+
+        var resolvedBody = resolve(body);
+
+        // The frame layout of the loop body is only known once all of it has been resolved
+        for (var tailCall : tailCalls) {
+            var parameters = tailCall.parameters();
+            for (var i = 0; i < parameters.length; i++) {
+                var shadowed = List.of(parameters).subList(i + 1, parameters.length).contains(parameters[i]);
+                tailCall.slots()[i] = shadowed ? -1 : scope.slotIfBound(parameters[i]);
+            }
+        }
+        tailCalls = enclosingTailCalls;
+
+        return new Loop(resolvedBody);
+    }
+
+    private Expression[] resolveAll(Expression[] expressions) {
+        var resolved = new Expression[expressions.length];
+        for (var i = 0; i < expressions.length; i++) {
+            resolved[i] = resolve(expressions[i]);
+        }
+
+        return resolved;
+    }
+
+    private record ResolvedBody(Expression body, int[] captures) {
+    }
+
+    private ResolvedBody resolveInScope(String parameter, Expression body) {
+        var bodyScope = new Scope(parameter, scope);
+
+        scope = bodyScope;
+        var resolvedBody = resolve(body);
+        scope = bodyScope.parent;
+
+        var captures = new int[bodyScope.captured.size()];
+        for (var i = 0; i < captures.length; i++) {
+            captures[i] = scope.slotOf(bodyScope.captured.get(i));
+        }
+
+        return new ResolvedBody(resolvedBody, captures);
+    }
+
+    private Expression resolveGroup(RecursiveBinding[] members, int selected) {
+        var names = new ArrayList<String>();
+        for (var m : members) {
+            names.add(m.name());
+        }
+
+        var groupScope = new Scope(null, names, scope);
+
+        scope = groupScope;
+        var resolvedMembers = new RecursiveBinding[members.length];
+        for (var i = 0; i < members.length; i++) {
+            var resolvedBody = resolveInScope(members[i].name(), members[i].body());
+            resolvedMembers[i] = new RecursiveBinding(members[i].name(), resolvedBody.body(), resolvedBody.captures());
+        }
+        scope = groupScope.parent;
+
+        var captures = new int[groupScope.captured.size() - members.length];
+        for (var i = 0; i < captures.length; i++) {
+            captures[i] = scope.slotOf(groupScope.captured.get(members.length + i));
+        }
+
+        return new RecursiveGroup(resolvedMembers, selected, captures);
+    }
+
+    private Expression resolveVariable(String name) {
+        if (scope != null && scope.binds(name)) {
+            return new LocalVariable(name, scope.slotOf(name));
+        }
+
+        var global = globals.get(name);
+        if (global == null) {
+            throw new RuntimeException("Unbound variable: %s".formatted(name));
+        }
+
+        return new GlobalVariable(name, global);
+    }
+}
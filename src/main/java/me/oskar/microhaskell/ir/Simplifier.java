@@ -0,0 +1,455 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplifies the IR before its variables are resolved. A round rewrites the program bottom-up, rounds are repeated
+ * until one leaves the program unchanged:
+ * <ul>
+ *     <li>{@code (\x. body) argument} is reduced if the argument is atomic or {@code x} is used at most once outside
+ *     of a lambda, so no work is duplicated. A binding that isn't used at all is removed.</li>
+ *     <li>Arithmetic and comparisons of literals and {@code if} with a literal condition are folded.</li>
+ *     <li>{@code \x. f x} becomes {@code f} if {@code f} is known to be a function value.</li>
+ *     <li>On level 2, small lambdas are also substituted at every use, e.g. {@code id}, {@code flip} or {@code .}
+ *     passed to another function.</li>
+ * </ul>
+ * Level 0 leaves the program as it is. Names are not required to be unique, a substitution that would capture a
+ * variable is not done.
+ */
+public class Simplifier {
+
+    private static final int MAX_ROUNDS = 16;
+    private static final int SMALL_LAMBDA = 10;
+
+    private final Map<String, Expression> globals;
+    private final int level;
+
+    private boolean changed = false;
+    private int rounds = 0;
+    private int betaReductions = 0;
+    private int deadBindings = 0;
+    private int foldedConstants = 0;
+    private int etaReductions = 0;
+
+    public Simplifier(Map<String, Expression> globals, int level) {
+        this.globals = globals;
+        this.level = level;
+    }
+
+    public Expression simplify(Expression program) {
+        if (level == 0) return program;
+
+        do {
+            changed = false;
+            program = rewrite(program, Set.of());
+            rounds++;
+        } while (changed && rounds < MAX_ROUNDS);
+
+        return program;
+    }
+
+    public int getRounds() {
+        return rounds;
+    }
+
+    public int getBetaReductions() {
+        return betaReductions;
+    }
+
+    public int getDeadBindings() {
+        return deadBindings;
+    }
+
+    public int getFoldedConstants() {
+        return foldedConstants;
+    }
+
+    public int getEtaReductions() {
+        return etaReductions;
+    }
+
+    /**
+     * @param functions the variables in scope that are known to be bound to a lambda
+     */
+    private Expression rewrite(Expression expression, Set<String> functions) {
+        return switch (expression) {
+            case Lambda(String parameter, Expression body, int[] ignored) ->
+                    etaReduce(new Lambda(parameter, rewrite(body, without(functions, parameter))), functions);
+            case RecursiveBinding(String name, Expression body, int[] ignored) ->
+                    new RecursiveBinding(name, rewrite(body, without(functions, name)));
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                var memberFunctions = functions;
+                for (var m : members) {
+                    memberFunctions = without(memberFunctions, m.name());
+                }
+
+                var rewrittenMembers = new RecursiveBinding[members.length];
+                for (var i = 0; i < members.length; i++) {
+                    rewrittenMembers[i] = (RecursiveBinding) rewrite(members[i], memberFunctions);
+                }
+
+                yield new RecursiveGroup(rewrittenMembers, selected);
+            }
+            case Application(Lambda(String parameter, Expression body, int[] ignored), Expression argument) -> {
+                var rewrittenArgument = rewrite(argument, functions);
+                var bodyFunctions = rewrittenArgument instanceof Lambda
+                        ? with(functions, parameter)
+                        : without(functions, parameter);
+
+                var rewrittenBody = rewrite(body, bodyFunctions);
+                var reduced = reduce(parameter, rewrittenBody, rewrittenArgument);
+
+                yield reduced != null
+                        ? reduced
+                        : new Application(new Lambda(parameter, rewrittenBody), rewrittenArgument);
+            }
+            case Application(Expression function, Expression argument) -> {
+                var rewrittenFunction = rewrite(function, functions);
+                var rewrittenArgument = rewrite(argument, functions);
+
+                if (rewrittenFunction instanceof Lambda(String parameter, Expression body, int[] ignored)) {
+                    var reduced = reduce(parameter, body, rewrittenArgument);
+                    if (reduced != null) yield reduced;
+                }
+
+                yield fold(new Application(rewrittenFunction, rewrittenArgument));
+            }
+            case Call call -> {
+                var function = rewrite(call.getFunction(), functions);
+                var arguments = rewriteAll(call.getArguments(), functions);
+
+                if (function instanceof Lambda(String parameter, Expression body, int[] ignored)) {
+                    var reduced = reduce(parameter, body, arguments[0]);
+                    if (reduced != null) {
+                        yield arguments.length == 1
+                                ? reduced
+                                : fold(new Call(reduced, List.of(arguments).subList(1, arguments.length)
+                                .toArray(Expression[]::new)));
+                    }
+                }
+
+                yield fold(new Call(function, arguments));
+            }
+            case Loop(Expression body) -> new Loop(rewrite(body, functions));
+            // The tail call has to stay a call of the loop, only its arguments are simplified
+            case SelfTailCall(Call call, String[] parameters, int[] ignored) -> new SelfTailCall(
+                    new Call(call.getFunction(), rewriteAll(call.getArguments(), functions)), parameters);
+            default -> expression;
+        };
+    }
+
+    private Expression[] rewriteAll(Expression[] expressions, Set<String> functions) {
+        var rewritten = new Expression[expressions.length];
+        for (var i = 0; i < expressions.length; i++) {
+            rewritten[i] = rewrite(expressions[i], functions);
+        }
+
+        return rewritten;
+    }
+
+    /**
+     * Reduces {@code (\parameter. body) argument}, or returns {@code null} if that would duplicate work.
+     */
+    private Expression reduce(String parameter, Expression body, Expression argument) {
+        var uses = new Uses();
+        countUses(body, parameter, false, uses);
+
+        if (uses.count == 0) {
+            deadBindings++;
+            changed = true;
+            return body;
+        }
+
+        var duplicable = isAtomic(argument)
+                || level >= 2 && argument instanceof Lambda && IrSize.of(argument) <= SMALL_LAMBDA;
+        var linear = uses.count == 1 && (!uses.underLambda || argument instanceof Lambda);
+        if (!duplicable && !linear) return null;
+
+        var substituted = substitute(body, parameter, argument, FreeVariables.of(argument));
+        if (substituted == null) return null;
+
+        betaReductions++;
+        changed = true;
+        return substituted;
+    }
+
+    private static boolean isAtomic(Expression expression) {
+        return expression instanceof Variable || expression instanceof IntLiteral
+                || expression instanceof BigIntLiteral || expression instanceof Cons || expression instanceof Nil;
+    }
+
+    private static final class Uses {
+
+        private int count = 0;
+        private boolean underLambda = false;
+    }
+
+    private static void countUses(Expression expression, String name, boolean underLambda, Uses uses) {
+        switch (expression) {
+            case Variable(String variable) -> {
+                if (variable.equals(name)) {
+                    uses.count++;
+                    uses.underLambda |= underLambda;
+                }
+            }
+            case Lambda(String parameter, Expression body, int[] ignored) -> {
+                if (!parameter.equals(name)) countUses(body, name, true, uses);
+            }
+            case RecursiveBinding(String binding, Expression body, int[] ignored) -> {
+                if (!binding.equals(name)) countUses(body, name, true, uses);
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                for (var m : members) {
+                    if (m.name().equals(name)) return;
+                }
+
+                for (var m : members) {
+                    countUses(m, name, true, uses);
+                }
+            }
+            case Application(Expression function, Expression argument) -> {
+                countUses(function, name, underLambda, uses);
+                countUses(argument, name, underLambda, uses);
+            }
+            case Call call -> {
+                countUses(call.getFunction(), name, underLambda, uses);
+                for (var argument : call.getArguments()) {
+                    countUses(argument, name, underLambda, uses);
+                }
+            }
+            // Every iteration evaluates the body again
+            case Loop(Expression body) -> countUses(body, name, true, uses);
+            case SelfTailCall tailCall -> countUses(tailCall.call(), name, underLambda, uses);
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Replaces the free occurrences of {@code name}, or returns {@code null} if a binder would capture a free variable
+     * of the replacement. Returns the expression itself if {@code name} doesn't occur in it.
+     */
+    private static Expression substitute(Expression expression, String name, Expression replacement,
+                                         Set<String> free) {
+        return switch (expression) {
+            case Variable(String variable) -> variable.equals(name) ? replacement : expression;
+            case Lambda(String parameter, Expression body, int[] ignored) -> {
+                if (parameter.equals(name)) yield expression;
+
+                var substituted = substitute(body, name, replacement, free);
+                if (substituted == null || substituted != body && free.contains(parameter)) yield null;
+
+                yield substituted == body ? expression : new Lambda(parameter, substituted);
+            }
+            case RecursiveBinding(String binding, Expression body, int[] ignored) -> {
+                if (binding.equals(name)) yield expression;
+
+                var substituted = substitute(body, name, replacement, free);
+                if (substituted == null || substituted != body && free.contains(binding)) yield null;
+
+                yield substituted == body ? expression : new RecursiveBinding(binding, substituted);
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] ignored) -> {
+                for (var m : members) {
+                    if (m.name().equals(name)) yield expression;
+                }
+
+                var substitutedMembers = new RecursiveBinding[members.length];
+                var substitutedAny = false;
+                for (var i = 0; i < members.length; i++) {
+                    var substituted = substitute(members[i], name, replacement, free);
+                    if (substituted == null) yield null;
+
+                    substitutedMembers[i] = (RecursiveBinding) substituted;
+                    substitutedAny |= substituted != members[i];
+                }
+
+                if (!substitutedAny) yield expression;
+
+                for (var m : members) {
+                    if (free.contains(m.name())) yield null;
+                }
+
+                yield new RecursiveGroup(substitutedMembers, selected);
+            }
+            case Application(Expression function, Expression argument) -> {
+                var substitutedFunction = substitute(function, name, replacement, free);
+                var substitutedArgument = substitute(argument, name, replacement, free);
+                if (substitutedFunction == null || substitutedArgument == null) yield null;
+
+                yield substitutedFunction == function && substitutedArgument == argument
+                        ? expression
+                        : new Application(substitutedFunction, substitutedArgument);
+            }
+            case Call call -> {
+                var function = substitute(call.getFunction(), name, replacement, free);
+                var arguments = substituteAll(call.getArguments(), name, replacement, free);
+                if (function == null || arguments == null) yield null;
+
+                yield function == call.getFunction() && arguments == call.getArguments()
+                        ? expression
+                        : new Call(function, arguments);
+            }
+            case Loop(Expression body) -> {
+                var substituted = substitute(body, name, replacement, free);
+                if (substituted == null) yield null;
+
+                yield substituted == body ? expression : new Loop(substituted);
+            }
+            case SelfTailCall(Call call, String[] parameters, int[] ignored) -> {
+                var arguments = substituteAll(call.getArguments(), name, replacement, free);
+                if (arguments == null) yield null;
+
+                yield arguments == call.getArguments()
+                        ? expression
+                        : new SelfTailCall(new Call(call.getFunction(), arguments), parameters);
+            }
+            default -> expression;
+        };
+    }
+
+    private static Expression[] substituteAll(Expression[] expressions, String name, Expression replacement,
+                                              Set<String> free) {
+        Expression[] substituted = expressions;
+        for (var i = 0; i < expressions.length; i++) {
+            var s = substitute(expressions[i], name, replacement, free);
+            if (s == null) return null;
+
+            if (s != expressions[i]) {
+                if (substituted == expressions) substituted = expressions.clone();
+                substituted[i] = s;
+            }
+        }
+
+        return substituted;
+    }
+
+    /**
+     * Folds a saturated arithmetic builtin or comparison of literals and an {@code if} with a literal condition.
+     */
+    private Expression fold(Expression application) {
+        var arguments = new ArrayList<Expression>();
+        var function = spine(application, arguments);
+
+        if (!(function instanceof Variable(String name)) || !(globals.get(name) instanceof BuiltinFunction bf)) {
+            return application;
+        }
+
+        if (name.equals("if") && arguments.size() >= 3 && isLiteral(arguments.getFirst())) {
+            var branch = arguments.getFirst() instanceof IntLiteral(long condition) && condition == 1
+                    ? arguments.get(1)
+                    : arguments.get(2);
+
+            foldedConstants++;
+            changed = true;
+            return apply(branch, arguments.subList(3, arguments.size()));
+        }
+
+        var operator = bf.getIntOperator();
+        if (operator == null || arguments.size() < 2
+                || !isLiteral(arguments.getFirst()) || !isLiteral(arguments.get(1))) {
+            return application;
+        }
+
+        Expression result;
+        try {
+            result = operator.apply(arguments.getFirst(), arguments.get(1));
+        } catch (ArithmeticException e) {
+            // Left to fail at run time, e.g. a division by zero in a branch that is never taken
+            return application;
+        }
+
+        foldedConstants++;
+        changed = true;
+        return apply(result, arguments.subList(2, arguments.size()));
+    }
+
+    private static Expression spine(Expression expression, List<Expression> arguments) {
+        return switch (expression) {
+            case Application(Expression function, Expression argument) -> {
+                arguments.addFirst(argument);
+                yield spine(function, arguments);
+            }
+            case Call call -> {
+                arguments.addAll(0, List.of(call.getArguments()));
+                yield spine(call.getFunction(), arguments);
+            }
+            default -> expression;
+        };
+    }
+
+    private static Expression apply(Expression function, List<Expression> arguments) {
+        for (var argument : arguments) {
+            function = new Application(function, argument);
+        }
+
+        return function;
+    }
+
+    private static boolean isLiteral(Expression expression) {
+        return expression instanceof IntLiteral || expression instanceof BigIntLiteral;
+    }
+
+    /**
+     * Reduces {@code \x. f x} to {@code f} if evaluating {@code f} can neither fail nor do any work, i.e. if it is a
+     * lambda, a variable bound to one, a builtin or a builtin applied to fewer arguments than it takes.
+     */
+    private Expression etaReduce(Lambda lambda, Set<String> functions) {
+        var parameter = lambda.parameter();
+
+        Expression function;
+        switch (lambda.body()) {
+            case Application(Expression f, Variable(String argument)) when argument.equals(parameter) ->
+                    function = f;
+            case Call call when call.getArguments()[call.getArguments().length - 1] instanceof Variable(String a)
+                    && a.equals(parameter) -> {
+                var arguments = call.getArguments();
+                function = arguments.length == 1
+                        ? call.getFunction()
+                        : new Call(call.getFunction(), List.of(arguments).subList(0, arguments.length - 1)
+                        .toArray(Expression[]::new));
+            }
+            default -> {
+                return lambda;
+            }
+        }
+
+        if (!isFunctionValue(function, functions) || FreeVariables.of(function).contains(parameter)) return lambda;
+
+        etaReductions++;
+        changed = true;
+        return function;
+    }
+
+    private boolean isFunctionValue(Expression expression, Set<String> functions) {
+        if (expression instanceof Lambda) return true;
+        if (expression instanceof Variable(String name) && functions.contains(name)) return true;
+
+        var arguments = new ArrayList<Expression>();
+        return spine(expression, arguments) instanceof Variable(String name)
+                && globals.get(name) instanceof BuiltinFunction bf
+                && arguments.size() < bf.getArity();
+    }
+
+    private static Set<String> with(Set<String> names, String name) {
+        if (names.contains(name)) return names;
+
+        var extended = new HashSet<>(names);
+        extended.add(name);
+        return extended;
+    }
+
+    private static Set<String> without(Set<String> names, String name) {
+        if (!names.contains(name)) return names;
+
+        var reduced = new HashSet<>(names);
+        reduced.remove(name);
+        return reduced;
+    }
+}
@@ -0,0 +1,143 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates the operands of strict binary builtins, i.e. arithmetic and comparisons, in parallel if both of them are
+ * expensive, by turning {@code a + b} into {@code speculate (+) a b}. The cost of an operand is estimated from the
+ * resolved IR: every application of a builtin costs 1, every call of another function {@value #CALL_COST}, and of the
+ * branches of an {@code if} only the more expensive one counts. An operation is only made speculative if both of its
+ * operands cost at least the threshold, otherwise there is nothing to overlap. Whether an operand is actually sparked
+ * is decided at runtime, see {@link me.oskar.microhaskell.evaluation.Sparks}.
+ */
+public class Speculator {
+
+    public static final int DEFAULT_THRESHOLD = 10;
+
+    private static final int CALL_COST = 10;
+
+    private static final GlobalVariable SPECULATE = new GlobalVariable("speculate", Builtins.SPECULATE);
+
+    private record Spine(Expression head, List<Expression> arguments) {
+    }
+
+    private final int threshold;
+    private int speculativeOperations = 0;
+
+    public Speculator(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public Expression speculate(Expression program) {
+        return rewrite(program);
+    }
+
+    /**
+     * The number of operations whose operands are evaluated in parallel.
+     */
+    public int getSpeculativeOperations() {
+        return speculativeOperations;
+    }
+
+    private Expression rewrite(Expression expression) {
+        var spine = spine(expression);
+        if (spine.arguments().size() == 2 && isStrictBinaryBuiltin(spine.head())) {
+            var left = spine.arguments().getFirst();
+            var right = spine.arguments().get(1);
+
+            if (cost(left) >= threshold && cost(right) >= threshold) {
+                speculativeOperations++;
+                return new Call(SPECULATE, new Expression[]{spine.head(), rewrite(left), rewrite(right)});
+            }
+        }
+
+        return switch (expression) {
+            case Lambda(String parameter, Expression body, int[] captures) ->
+                    new Lambda(parameter, rewrite(body), captures);
+            case RecursiveBinding(String name, Expression body, int[] captures) ->
+                    new RecursiveBinding(name, rewrite(body), captures);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                var rewrittenMembers = new RecursiveBinding[members.length];
+                for (var i = 0; i < members.length; i++) {
+                    rewrittenMembers[i] = (RecursiveBinding) rewrite(members[i]);
+                }
+
+                yield new RecursiveGroup(rewrittenMembers, selected, captures);
+            }
+            case Application(Expression function, Expression argument) ->
+                    new Application(rewrite(function), rewrite(argument));
+            case Call call -> rewriteCall(call);
+            case Loop(Expression body) -> new Loop(rewrite(body));
+            case SelfTailCall(Call call, String[] parameters, int[] slots) ->
+                    new SelfTailCall(rewriteCall(call), parameters, slots);
+            default -> expression;
+        };
+    }
+
+    private Call rewriteCall(Call call) {
+        var arguments = call.getArguments();
+        var rewrittenArguments = new Expression[arguments.length];
+        for (var i = 0; i < arguments.length; i++) {
+            rewrittenArguments[i] = rewrite(arguments[i]);
+        }
+
+        return new Call(rewrite(call.getFunction()), rewrittenArguments, call.getStrictness());
+    }
+
+    private int cost(Expression expression) {
+        return switch (expression) {
+            case Application ignored -> costOfCall(spine(expression));
+            case Call ignored -> costOfCall(spine(expression));
+            default -> 0;
+        };
+    }
+
+    private int costOfCall(Spine spine) {
+        var arguments = spine.arguments();
+
+        var cost = 0;
+        for (var argument : arguments) {
+            cost += cost(argument);
+        }
+
+        // A let binding
+        if (spine.head() instanceof Lambda lambda) return cost + cost(lambda.body());
+
+        if (!(spine.head() instanceof GlobalVariable(String name, Expression value))
+                || !(value instanceof BuiltinFunction)) {
+            return cost + cost(spine.head()) + CALL_COST;
+        }
+
+        if (name.equals("if") && arguments.size() == 3) {
+            return 1 + cost(arguments.getFirst()) + Math.max(cost(arguments.get(1)), cost(arguments.get(2)));
+        }
+
+        return cost + 1;
+    }
+
+    private static boolean isStrictBinaryBuiltin(Expression expression) {
+        return expression instanceof GlobalVariable(String ignored, Expression value)
+                && value instanceof BuiltinFunction bf && !bf.isPartiallyApplied() && bf.getIntOperator() != null;
+    }
+
+    private static Spine spine(Expression expression) {
+        var arguments = new ArrayList<Expression>();
+        var function = expression;
+
+        while (true) {
+            if (function instanceof Application(Expression f, Expression argument)) {
+                arguments.addFirst(argument);
+                function = f;
+            } else if (function instanceof Call call) {
+                arguments.addAll(0, List.of(call.getArguments()));
+                function = call.getFunction();
+            } else {
+                return new Spine(function, arguments);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.evaluation.expression.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the parameters of known functions that are always forced when the function is entered and marks the
+ * corresponding arguments of saturated {@link Call}s as strict, so they are evaluated eagerly instead of being wrapped
+ * in a thunk. Builtins contribute their strict arguments, {@code if} forces its condition and whatever both of its
+ * branches force. Recursive functions are analyzed by a fixpoint iteration that starts out assuming every parameter
+ * is strict.
+ */
+public class StrictnessAnalyzer {
+
+    /**
+     * What is known about the value of every slot of a frame, mirroring
+     * {@link me.oskar.microhaskell.evaluation.Environment}.
+     */
+    private static final class Frame {
+
+        private FunctionInfo argument;
+        private final FunctionInfo[] captured;
+
+        private Frame(FunctionInfo argument, FunctionInfo[] captured) {
+            this.argument = argument;
+            this.captured = captured;
+        }
+
+        private FunctionInfo lookup(int slot) {
+            return slot == 0 ? argument : captured[slot - 1];
+        }
+
+        private FunctionInfo[] capture(int[] captures) {
+            var infos = new FunctionInfo[captures.length];
+            for (var i = 0; i < captures.length; i++) {
+                infos[i] = lookup(captures[i]);
+            }
+
+            return infos;
+        }
+    }
+
+    private static final class FunctionInfo {
+
+        private final Lambda lambda;
+        private final Frame frame;
+        private final UncurriedEntry entry;
+        private boolean[] strict;
+
+        private FunctionInfo(Lambda lambda, Frame frame) {
+            this.lambda = lambda;
+            this.frame = frame;
+            this.entry = UncurriedEntry.of(lambda, Integer.MAX_VALUE);
+            this.strict = new boolean[entry.arity()];
+            Arrays.fill(strict, true);
+        }
+    }
+
+    private int strictArguments = 0;
+
+    public Expression analyze(Expression program) {
+        return rewrite(program, new Frame(null, new FunctionInfo[0]));
+    }
+
+    /**
+     * The number of arguments that are no longer delayed, i.e. the number of thunk allocations removed from the
+     * program text.
+     */
+    public int getStrictArguments() {
+        return strictArguments;
+    }
+
+    private Expression rewrite(Expression expression, Frame frame) {
+        return switch (expression) {
+            case Lambda(String parameter, Expression body, int[] captures) ->
+                    new Lambda(parameter, rewrite(body, new Frame(null, frame.capture(captures))), captures);
+            case RecursiveBinding(String name, Expression body, int[] captures) -> {
+                var bindingFrame = bindRecursive(body, captures, frame);
+                yield new RecursiveBinding(name, rewrite(body, bindingFrame), captures);
+            }
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                var memberFrames = bindGroup(members, captures, frame);
+
+                var rewrittenMembers = new RecursiveBinding[members.length];
+                for (var i = 0; i < members.length; i++) {
+                    var m = members[i];
+                    rewrittenMembers[i] = new RecursiveBinding(m.name(), rewrite(m.body(), memberFrames[i]),
+                            m.captures());
+                }
+
+                yield new RecursiveGroup(rewrittenMembers, selected, captures);
+            }
+            // A shared binding, what is known about the bound function is known inside the body
+            case Application(Lambda(String parameter, Expression body, int[] captures), Expression argument) -> {
+                var bodyFrame = new Frame(knownFunction(argument, frame), frame.capture(captures));
+                var lambda = new Lambda(parameter, rewrite(body, bodyFrame), captures);
+
+                // A redex the simplifier kept, e.g. a let binding used more than once, is entered right away
+                if (!(body instanceof Lambda) && forces(body, bodyFrame).contains(0)) {
+                    strictArguments++;
+                    yield new Call(lambda, new Expression[]{rewrite(argument, frame)}, new boolean[]{true});
+                }
+
+                yield new Application(lambda, rewrite(argument, frame));
+            }
+            case Application(Expression function, Expression argument) ->
+                    new Application(rewrite(function, frame), rewrite(argument, frame));
+            case Call call -> rewriteCall(call, frame);
+            case Loop(Expression body) -> new Loop(rewrite(body, frame));
+            case SelfTailCall(Call call, String[] parameters, int[] slots) ->
+                    new SelfTailCall(rewriteCall(call, frame), parameters, slots);
+            default -> expression;
+        };
+    }
+
+    private Call rewriteCall(Call call, Frame frame) {
+        var arguments = call.getArguments();
+        var info = knownFunction(call.getFunction(), frame);
+
+        var strict = new boolean[arguments.length];
+        if (info != null && arguments.length >= info.strict.length) {
+            for (var i = 0; i < info.strict.length; i++) {
+                strict[i] = info.strict[i];
+                if (strict[i]) strictArguments++;
+            }
+        }
+
+        var rewrittenArguments = new Expression[arguments.length];
+        for (var i = 0; i < arguments.length; i++) {
+            rewrittenArguments[i] = rewrite(arguments[i], frame);
+        }
+
+        return new Call(rewrite(call.getFunction(), frame), rewrittenArguments, strict);
+    }
+
+    private Frame bindRecursive(Expression body, int[] captures, Frame frame) {
+        var bindingFrame = new Frame(null, frame.capture(captures));
+        if (!(body instanceof Lambda lambda)) return bindingFrame;
+
+        var info = new FunctionInfo(lambda, bindingFrame);
+        bindingFrame.argument = info;
+        solve(List.of(info));
+
+        return bindingFrame;
+    }
+
+    private Frame[] bindGroup(RecursiveBinding[] members, int[] captures, Frame frame) {
+        var groupCaptured = new FunctionInfo[members.length + captures.length];
+        System.arraycopy(frame.capture(captures), 0, groupCaptured, members.length, captures.length);
+        var groupFrame = new Frame(null, groupCaptured);
+
+        var memberFrames = new Frame[members.length];
+        var infos = new ArrayList<FunctionInfo>();
+        for (var i = 0; i < members.length; i++) {
+            memberFrames[i] = new Frame(null, groupFrame.capture(members[i].captures()));
+
+            if (members[i].body() instanceof Lambda lambda) {
+                var info = new FunctionInfo(lambda, memberFrames[i]);
+                memberFrames[i].argument = info;
+                groupCaptured[i] = info;
+                infos.add(info);
+            }
+        }
+
+        // The member frames were captured before the infos of the other members existed
+        for (var i = 0; i < members.length; i++) {
+            var memberCaptures = members[i].captures();
+            for (var j = 0; j < memberCaptures.length; j++) {
+                memberFrames[i].captured[j] = groupFrame.lookup(memberCaptures[j]);
+            }
+        }
+
+        solve(infos);
+
+        return memberFrames;
+    }
+
+    private void solve(List<FunctionInfo> infos) {
+        var changed = true;
+        while (changed) {
+            changed = false;
+
+            for (var info : infos) {
+                var strict = strictness(info);
+                if (!Arrays.equals(strict, info.strict)) {
+                    info.strict = strict;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean[] strictness(FunctionInfo info) {
+        var entry = info.entry;
+        var sources = entry.sources();
+
+        var bodyCaptured = new FunctionInfo[sources.length];
+        for (var i = 0; i < sources.length; i++) {
+            if (sources[i] >= 0) {
+                bodyCaptured[i] = info.frame.lookup(info.lambda.captures()[sources[i]]);
+            }
+        }
+
+        var forced = forces(entry.body(), new Frame(null, bodyCaptured));
+
+        var strict = new boolean[entry.arity()];
+        for (var slot : forced) {
+            if (slot == 0) {
+                strict[entry.arity() - 1] = true;
+            } else if (sources[slot - 1] < 0) {
+                strict[-sources[slot - 1] - 1] = true;
+            }
+        }
+
+        return strict;
+    }
+
+    /**
+     * The slots of the frame that are certainly forced when the expression is evaluated to weak head normal form.
+     */
+    private Set<Integer> forces(Expression expression, Frame frame) {
+        return switch (expression) {
+            case LocalVariable(String ignored, int slot) -> Set.of(slot);
+            case Application application -> {
+                var arguments = new ArrayList<Expression>();
+
+                Expression function = application;
+                while (function instanceof Application(Expression f, Expression argument)) {
+                    arguments.addFirst(argument);
+                    function = f;
+                }
+
+                yield forcesCall(function, arguments, frame);
+            }
+            case Call call -> forcesCall(call.getFunction(), List.of(call.getArguments()), frame);
+            case Loop(Expression body) -> forces(body, frame);
+            case SelfTailCall tailCall -> forces(tailCall.call(), frame);
+            default -> Set.of();
+        };
+    }
+
+    private Set<Integer> forcesCall(Expression function, List<Expression> arguments, Frame frame) {
+        var forced = new HashSet<Integer>();
+
+        if (function instanceof GlobalVariable(String name, Expression value)
+                && value instanceof BuiltinFunction bf && !bf.isPartiallyApplied()) {
+            if (arguments.size() < bf.getArity()) return forced;
+
+            for (var i = 0; i < bf.getStrictArguments(); i++) {
+                forced.addAll(forces(arguments.get(i), frame));
+            }
+
+            if (name.equals("if")) {
+                var branch = new HashSet<>(forces(arguments.get(1), frame));
+                branch.retainAll(forces(arguments.get(2), frame));
+                forced.addAll(branch);
+            }
+
+            return forced;
+        }
+
+        forced.addAll(forces(function, frame));
+
+        var info = knownFunction(function, frame);
+        if (info != null && arguments.size() >= info.strict.length) {
+            for (var i = 0; i < info.strict.length; i++) {
+                if (info.strict[i]) forced.addAll(forces(arguments.get(i), frame));
+            }
+        }
+
+        return forced;
+    }
+
+    private FunctionInfo knownFunction(Expression function, Frame frame) {
+        return switch (function) {
+            case LocalVariable(String ignored, int slot) -> frame.lookup(slot);
+            case Lambda lambda -> {
+                var info = new FunctionInfo(lambda, frame);
+                info.strict = strictness(info);
+                yield info;
+            }
+            case RecursiveBinding(String ignored, Expression body, int[] captures) ->
+                    bindRecursive(body, captures, frame).argument;
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) ->
+                    bindGroup(members, captures, frame)[selected].argument;
+            default -> null;
+        };
+    }
+}
@@ -9,6 +9,7 @@ import me.oskar.microhaskell.lexer.TokenType;
 import me.oskar.microhaskell.position.Span;
 import me.oskar.microhaskell.table.OperatorEntry;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 
 public class Parser {
@@ -226,7 +227,7 @@ public class Parser {
             case IF -> parseIf();
             case BACKSLASH -> parseAnonymousFunction();
             case IDENT -> new IdentifierNode(span, eatToken(TokenType.IDENT).lexeme());
-            case INT -> new IntLiteralNode(span, Integer.parseInt(eatToken(TokenType.INT).lexeme()));
+            case INT -> new IntLiteralNode(span, new BigInteger(eatToken(TokenType.INT).lexeme()));
             default -> throw error.unexpectedToken(currentToken, "expression");
         };
     }
@@ -254,7 +255,7 @@ public class Parser {
 
         return switch (currentToken.type()) {
             case IDENT -> new IdentifierNode(span, eatToken(TokenType.IDENT).lexeme());
-            case INT -> new IntLiteralNode(span, Integer.parseInt(eatToken(TokenType.INT).lexeme()));
+            case INT -> new IntLiteralNode(span, new BigInteger(eatToken(TokenType.INT).lexeme()));
             default -> throw error.unexpectedToken(currentToken, "atomic expression");
         };
     }
@@ -1,6 +1,7 @@
 package me.oskar.microhaskell.prelude;
 
 import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.ast.FunctionDefinitionNode;
 import me.oskar.microhaskell.ast.ProgramNode;
 import me.oskar.microhaskell.error.Error;
 import me.oskar.microhaskell.lexer.Lexer;
@@ -9,6 +10,7 @@ import me.oskar.microhaskell.table.SymbolTable;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Scanner;
 
 public class Prelude {
@@ -31,8 +33,12 @@ public class Prelude {
         var prelude = readResourceAsString("prelude.mhs");
 
         var error = new Error(prelude, "prelude.mhs");
-        var lexer = new Lexer(prelude);
+        var ast = new Parser(new Lexer(prelude), error).parse();
 
-        return Main.process(symbolTable, error, lexer);
+        // Functions that are already builtins, e.g. the native list functions, keep their definition only as a fallback
+        var bindings = new ArrayList<>(ast.getBindings());
+        bindings.removeIf(b -> b instanceof FunctionDefinitionNode fd && symbolTable.isDefined(fd.getName()));
+
+        return Main.analyze(symbolTable, error, new ProgramNode(ast.getSpan(), bindings));
     }
 }
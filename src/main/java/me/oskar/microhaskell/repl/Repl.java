@@ -1,14 +1,15 @@
 package me.oskar.microhaskell.repl;
 
 import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
 import me.oskar.microhaskell.ast.FunctionDefinitionNode;
 import me.oskar.microhaskell.ast.ProgramNode;
 import me.oskar.microhaskell.error.CompileTimeError;
 import me.oskar.microhaskell.error.Error;
 import me.oskar.microhaskell.error.MainFunctionMissingError;
 import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.Evaluator;
 import me.oskar.microhaskell.evaluation.expression.Expression;
-import me.oskar.microhaskell.ir.IrGeneratorVisitor;
 import me.oskar.microhaskell.lexer.Lexer;
 import me.oskar.microhaskell.prelude.Prelude;
 import me.oskar.microhaskell.table.SymbolTable;
@@ -20,10 +21,17 @@ public class Repl {
 
     private static final String COMMAND_PREFIX = ":";
 
+    private final Options options;
+    private final Evaluator evaluator;
     private SymbolTable symbolTable;
-    private Map<String, Expression> env;
+    private Map<String, Expression> globals;
     private ProgramNode program;
 
+    public Repl(Options options) {
+        this.options = options;
+        this.evaluator = options.createEvaluator();
+    }
+
     public void start() {
         printPrefixedLine("Welcome to the Micro Haskell REPL");
         printPrefixedLine("Type :help for more information");
@@ -41,7 +49,7 @@ public class Repl {
 
     private void initialize() {
         symbolTable = new SymbolTable();
-        env = Builtins.initialEnv(symbolTable);
+        globals = Builtins.initialEnv(symbolTable, options.isNativeLists());
         program = Prelude.readPrelude(symbolTable);
     }
 
@@ -104,10 +112,18 @@ public class Repl {
             var ast = Main.process(symbolTable, error, lexer);
             program = program.merge(ast);
 
-            var irGenerator = new IrGeneratorVisitor(symbolTable, error);
-            var ir = program.accept(irGenerator);
+            var compilation = Main.compile(program, symbolTable, globals, options.getInlineBudget(),
+                    options.getOptimizationLevel(), options.getSpeculationThreshold(), error);
+            var ir = evaluator.prepare(compilation.program());
+
+            var result = options.getBudget().evaluate(evaluator, ir);
+            if (result.isExhausted()) {
+                printPrefixedLine("Error: out of %s after %s".formatted(result.exhausted().name().toLowerCase(),
+                        result.describeUsage()));
+                return null;
+            }
 
-            return ir.evaluate(env);
+            return result.value();
         } catch (MainFunctionMissingError e) {
             return null;
         } catch (CompileTimeError e) {
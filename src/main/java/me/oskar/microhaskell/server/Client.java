@@ -0,0 +1,46 @@
+package me.oskar.microhaskell.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends a program to a {@link Server} and prints its output as if it had been evaluated by the command line
+ * interpreter.
+ */
+public class Client {
+
+    private Client() {
+    }
+
+    /**
+     * @return the exit status of the program
+     */
+    public static int send(SocketAddress address, String filename, String code) throws IOException {
+        try (var channel = SocketChannel.open(address)) {
+            var request = "%s%n%s".formatted(filename, code).getBytes(StandardCharsets.UTF_8);
+            Channels.newOutputStream(channel).write(request);
+            channel.shutdownOutput();
+
+            var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(Server.OUT)) {
+                    System.out.println(line.substring(Server.OUT.length()));
+                } else if (line.startsWith(Server.ERR)) {
+                    System.err.println(line.substring(Server.ERR.length()));
+                } else if (line.startsWith(Server.EXIT)) {
+                    return Integer.parseInt(line.substring(Server.EXIT.length()));
+                }
+            }
+        }
+
+        throw new IOException("Connection closed by the server");
+    }
+}
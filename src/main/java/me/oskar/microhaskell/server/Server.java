@@ -0,0 +1,201 @@
+package me.oskar.microhaskell.server;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.ast.ProgramNode;
+import me.oskar.microhaskell.error.CompileTimeError;
+import me.oskar.microhaskell.error.Error;
+import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.RuntimeStatistics;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.ir.Compilation;
+import me.oskar.microhaskell.lexer.Lexer;
+import me.oskar.microhaskell.prelude.Prelude;
+import me.oskar.microhaskell.table.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * A daemon that keeps the analysed prelude ready in a warmed-up JVM and evaluates the programs it receives over a
+ * loopback or Unix domain socket, each on its own virtual thread. Every program is analysed in a table that
+ * {@link SymbolTable#extend(SymbolTable) extends} the one of the prelude, so programs can't see or change each other.
+ * <p>
+ * A request is the name of the program on the first line, followed by its code up to the end of the input. The
+ * response streams the output of the program line by line, each line prefixed by {@value #OUT} or {@value #ERR}
+ * depending on whether the command line interpreter prints it to stdout or stderr, and ends with {@value #EXIT} and the
+ * exit status, see {@link Client}. The options of the server apply to every program. Unlike the command line
+ * interpreter, the server reports an error during the evaluation as a single line instead of a stack trace.
+ * <p>
+ * With {@code --stats}, the counters of the sparks and memo tables are those of the request, see
+ * {@link RuntimeStatistics}. The options that configure them, like {@code --cores} and {@code --memo}, are shared by
+ * all requests.
+ */
+public class Server {
+
+    static final String OUT = "out ";
+    static final String ERR = "err ";
+    static final String EXIT = "exit ";
+
+    private static final int WARM_UP_ROUNDS = 50;
+    private static final String WARM_UP_PROGRAM = """
+            square x = x * x;
+            main = sum (map square (filter even (take 500 (replicate 1000 3)))) + length (reverse (replicate 500 1));
+            """;
+
+    private final Options options;
+    private final SymbolTable prelude = new SymbolTable();
+    private final Map<String, Expression> globals;
+    private final ProgramNode preludeProgram;
+    // Functions are numbered globally while they are parsed, and generating the IR sets the nodes of the prelude's
+    // functions, so programs are compiled one at a time and only evaluated concurrently
+    private final ReentrantLock compilationLock = new ReentrantLock();
+
+    public Server(Options options) {
+        this.options = options;
+
+        globals = Builtins.initialEnv(prelude, options.isNativeLists());
+        preludeProgram = Prelude.readPrelude(prelude);
+    }
+
+    /**
+     * Compiles and evaluates a small program a few times, so the first requests don't run in the interpreter of the
+     * JVM.
+     */
+    public void warmUp() {
+        var response = new Response(new PrintWriter(Writer.nullWriter()));
+        for (var i = 0; i < WARM_UP_ROUNDS; i++) {
+            run("warm-up", WARM_UP_PROGRAM, response);
+        }
+    }
+
+    /**
+     * Accepts connections until the process is terminated.
+     */
+    public void serve(SocketAddress address) throws IOException {
+        var family = address instanceof UnixDomainSocketAddress
+                ? StandardProtocolFamily.UNIX
+                : StandardProtocolFamily.INET;
+
+        try (var serverChannel = ServerSocketChannel.open(family);
+             var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            serverChannel.bind(address);
+            if (address instanceof UnixDomainSocketAddress unixAddress) unixAddress.getPath().toFile().deleteOnExit();
+
+            System.err.printf("Listening on %s%n", serverChannel.getLocalAddress());
+
+            while (true) {
+                var channel = serverChannel.accept();
+                executor.execute(() -> handle(channel));
+            }
+        }
+    }
+
+    private void handle(SocketChannel channel) {
+        try (channel) {
+            var reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel),
+                    StandardCharsets.UTF_8));
+            var writer = new PrintWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8));
+
+            var filename = reader.readLine();
+            if (filename == null) return;
+
+            var code = reader.lines().collect(Collectors.joining("\n"));
+
+            var response = new Response(writer);
+            response.exit(run(filename, code, response));
+        } catch (IOException e) {
+            // The client is gone, there is no one left to report the error to
+        }
+    }
+
+    /**
+     * Compiles and evaluates a program on top of the prelude.
+     *
+     * @return the exit status of the command line interpreter for the program
+     */
+    private int run(String filename, String code, Response response) {
+        var error = new Error(code, filename);
+        var evaluator = options.createEvaluator();
+
+        Compilation compilation;
+        compilationLock.lock();
+        try {
+            var symbolTable = SymbolTable.extend(prelude);
+            var ast = preludeProgram.merge(Main.process(symbolTable, error, new Lexer(code)));
+
+            compilation = Main.compile(ast, symbolTable, globals, options.getInlineBudget(),
+                    options.getOptimizationLevel(), options.getSpeculationThreshold(), error);
+        } catch (CompileTimeError e) {
+            var buffer = new ByteArrayOutputStream();
+            e.printError(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+            response.print(OUT, buffer.toString(StandardCharsets.UTF_8));
+
+            return 1;
+        } finally {
+            compilationLock.unlock();
+        }
+
+        var statistics = new RuntimeStatistics();
+        try {
+            var ir = evaluator.prepare(compilation.program());
+
+            response.print(OUT, ir.toString());
+
+            var result = RuntimeStatistics.collect(statistics, () -> options.getBudget().evaluate(evaluator, ir));
+            if (result.isExhausted()) {
+                response.print(ERR, "Error: out of %s after %s".formatted(result.exhausted().name().toLowerCase(),
+                        result.describeUsage()));
+
+                return 1;
+            }
+
+            response.print(OUT, result.value().toString());
+        } catch (RuntimeException | StackOverflowError e) {
+            response.print(ERR, "Error: %s".formatted(e));
+
+            return 1;
+        }
+
+        if (options.isPrintStatistics()) {
+            compilation.statistics().forEach((name, value) -> response.print(ERR, "%s: %d".formatted(name, value)));
+            evaluator.getStatistics().forEach((name, value) -> response.print(ERR, "%s: %d".formatted(name, value)));
+            statistics.getStatistics().forEach((name, value) -> response.print(ERR, "%s: %d".formatted(name, value)));
+        }
+
+        return 0;
+    }
+
+    private record Response(PrintWriter writer) {
+
+        private void print(String stream, String text) {
+            text.lines().forEach(line -> writer.println(stream + line));
+            writer.flush();
+        }
+
+        private void exit(int status) throws IOException {
+            writer.println(EXIT + status);
+            writer.flush();
+
+            if (writer.checkError()) throw new IOException("Error writing response");
+        }
+    }
+}
@@ -2,11 +2,14 @@ package me.oskar.microhaskell.table;
 
 import me.oskar.microhaskell.ast.FunctionDefinitionNode;
 
+import java.util.List;
+
 public class FunctionEntry implements Entry {
 
     private boolean appliedSelfRecursively = false;
     private boolean appliedMutuallyRecursively = false;
     private final int dispatchId;
+    private List<FunctionEntry> recursionGroup = List.of();
     private FunctionDefinitionNode node;
 
     private final SymbolTable localTable;
@@ -40,6 +43,18 @@ public class FunctionEntry implements Entry {
         this.appliedMutuallyRecursively = appliedMutuallyRecursively;
     }
 
+    /**
+     * The functions of the same scope that are mutually recursive with this one, including itself, ordered by
+     * dispatch id.
+     */
+    public List<FunctionEntry> getRecursionGroup() {
+        return recursionGroup;
+    }
+
+    public void setRecursionGroup(List<FunctionEntry> recursionGroup) {
+        this.recursionGroup = recursionGroup;
+    }
+
     public FunctionDefinitionNode getNode() {
         return node;
     }
@@ -6,20 +6,45 @@ import java.util.Map;
 public class SymbolTable {
 
     private final SymbolTable parent;
+    private final boolean extension;
     private final Map<String, Entry> symbols = new HashMap<>();
     private final Map<String, OperatorEntry> operators = new HashMap<>();
     private final Map<Integer, FunctionEntry> functions = new HashMap<>();
 
     public SymbolTable(SymbolTable parent) {
+        this(parent, false);
+    }
+
+    private SymbolTable(SymbolTable parent, boolean extension) {
         this.parent = parent;
+        this.extension = extension;
     }
 
     public SymbolTable() {
         this(null);
     }
 
+    /**
+     * Creates a table that adds definitions to the scope of the given table without changing it, e.g. a program to a
+     * prelude that is shared by several programs. Unlike a nested scope, it may not redefine the names of its parent.
+     */
+    public static SymbolTable extend(SymbolTable parent) {
+        return new SymbolTable(parent, true);
+    }
+
+    public SymbolTable getParent() {
+        return parent;
+    }
+
+    /**
+     * Whether this table belongs to the same scope as its parent, see {@link #extend(SymbolTable)}.
+     */
+    public boolean isExtension() {
+        return extension;
+    }
+
     public void enterOperator(String name, OperatorEntry entry, Runnable error) {
-        if (operators.containsKey(name)) {
+        if (definesOperator(name)) {
             error.run();
         }
 
@@ -49,7 +74,7 @@ public class SymbolTable {
     public void enter(String name, Entry entry, Runnable error) {
         if (name.equals("_")) return;
 
-        if (symbols.containsKey(name)) {
+        if (definesSymbol(name)) {
             error.run();
         }
 
@@ -60,6 +85,14 @@ public class SymbolTable {
         }
     }
 
+    private boolean definesOperator(String name) {
+        return operators.containsKey(name) || extension && parent.definesOperator(name);
+    }
+
+    private boolean definesSymbol(String name) {
+        return symbols.containsKey(name) || extension && parent.definesSymbol(name);
+    }
+
     public void remove(String name) {
         if (symbols.containsKey(name)) {
             symbols.remove(name);
@@ -80,6 +113,21 @@ public class SymbolTable {
         return null;
     }
 
+    /**
+     * The table that defines the given name, or {@code null} if neither this table nor one of its parents does.
+     */
+    public SymbolTable scopeOf(String name) {
+        if (symbols.containsKey(name)) {
+            return this;
+        }
+
+        if (parent != null) {
+            return parent.scopeOf(name);
+        }
+
+        return null;
+    }
+
     public Entry lookup(String name, Runnable error) {
         var entry = lookup(name);
 
@@ -0,0 +1,161 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.error.Error;
+import me.oskar.microhaskell.evaluation.expression.Expression;
+import me.oskar.microhaskell.lexer.Lexer;
+import me.oskar.microhaskell.prelude.Prelude;
+import me.oskar.microhaskell.table.SymbolTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that every limit ends a divergent evaluation with a result on every evaluator, and that the meters of
+ * evaluations on different threads, including virtual ones, are kept apart.
+ */
+class BudgetTest {
+
+    private static final String DIVERGENT = """
+            loop n = loop (n + 1);
+            main = loop 0;
+            """;
+
+    // Allocates a fresh list on every iteration
+    private static final String ALLOCATING = """
+            loop n = if length (replicate 1000 n) > 0 then loop (n + 1) else 0;
+            main = loop 0;
+            """;
+
+    private static final String FINITE = """
+            main = sum (replicate 10000 1);
+            """;
+
+    private static final long MAX_REDUCTIONS = 10_000;
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void reductionLimitEndsEvaluation(Options.EvaluatorKind kind) {
+        var result = evaluate(new Budget(MAX_REDUCTIONS, 0, 0), DIVERGENT, kind);
+
+        assertExhausted(Budget.Resource.REDUCTIONS, result);
+        assertEquals(MAX_REDUCTIONS + 1, result.reductions());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void timeoutEndsEvaluation(Options.EvaluatorKind kind) {
+        var result = evaluate(new Budget(0, 100, 0), DIVERGENT, kind);
+
+        assertExhausted(Budget.Resource.TIME, result);
+        assertTrue(result.elapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void allocationLimitEndsEvaluation(Options.EvaluatorKind kind) {
+        var result = evaluate(new Budget(0, 0, 1024 * 1024), ALLOCATING, kind);
+
+        assertExhausted(Budget.Resource.ALLOCATION, result);
+        assertTrue(result.allocatedBytes() > 1024 * 1024);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void evaluationWithinBudgetHasValue(Options.EvaluatorKind kind) {
+        var result = evaluate(new Budget(10_000_000, 60_000, 1024L * 1024 * 1024), FINITE, kind);
+
+        assertFalse(result.isExhausted());
+        assertEquals("10000", result.value().toString());
+        assertTrue(result.reductions() > 0);
+    }
+
+    // A virtual thread doesn't measure its allocations, so the evaluation moves to a platform thread
+    @Test
+    void allocationLimitOnVirtualThread() throws Exception {
+        var exhausted = new FutureTask<>(() -> evaluate(new Budget(0, 0, 1024 * 1024), ALLOCATING,
+                Options.EvaluatorKind.MACHINE));
+        Thread.ofVirtual().start(exhausted).join();
+
+        assertExhausted(Budget.Resource.ALLOCATION, exhausted.get());
+
+        var finished = new FutureTask<>(() -> evaluate(new Budget(0, 0, 1024L * 1024 * 1024), FINITE,
+                Options.EvaluatorKind.MACHINE));
+        Thread.ofVirtual().start(finished).join();
+
+        assertEquals("10000", finished.get().value().toString());
+        assertTrue(finished.get().allocatedBytes() > 0);
+    }
+
+    @Test
+    void reductionLimitOnVirtualThread() throws Exception {
+        var task = new FutureTask<>(() -> evaluate(new Budget(MAX_REDUCTIONS, 0, 0), DIVERGENT,
+                Options.EvaluatorKind.MACHINE));
+        Thread.ofVirtual().start(task).join();
+
+        assertExhausted(Budget.Resource.REDUCTIONS, task.get());
+        assertEquals(MAX_REDUCTIONS + 1, task.get().reductions());
+    }
+
+    // Only the meter set up last is cached, every other metered thread has to find its own
+    @Test
+    void concurrentEvaluationsAreChargedSeparately() throws Exception {
+        var expected = evaluate(new Budget(10_000_000, 0, 0), FINITE, Options.EvaluatorKind.MACHINE).reductions();
+
+        var started = new CountDownLatch(1);
+        var divergent = new FutureTask<>(() -> {
+            started.countDown();
+            return evaluate(new Budget(0, 3_000, 0), DIVERGENT, Options.EvaluatorKind.MACHINE);
+        });
+        Thread.ofPlatform().start(divergent);
+        started.await();
+
+        // The divergent evaluation may set up its meter after these, which then are not cached
+        do {
+            var result = evaluate(new Budget(10_000_000, 0, 0), FINITE, Options.EvaluatorKind.MACHINE);
+            assertEquals(expected, result.reductions());
+
+            var exhausted = evaluate(new Budget(MAX_REDUCTIONS, 0, 0), DIVERGENT, Options.EvaluatorKind.MACHINE);
+            assertEquals(MAX_REDUCTIONS + 1, exhausted.reductions());
+
+            // Neither the meter of the exhausted evaluation nor the one of the other thread may charge this one
+            var unlimited = evaluate(Budget.UNLIMITED, FINITE, Options.EvaluatorKind.MACHINE);
+            assertEquals("10000", unlimited.value().toString());
+            assertNull(Budget.currentAccount());
+        } while (!divergent.isDone());
+
+        assertExhausted(Budget.Resource.TIME, divergent.get());
+    }
+
+    private static void assertExhausted(Budget.Resource resource, Budget.Result result) {
+        assertTrue(result.isExhausted());
+        assertEquals(resource, result.exhausted());
+        assertNull(result.value());
+    }
+
+    private static Budget.Result evaluate(Budget budget, String code, Options.EvaluatorKind kind) {
+        var evaluator = Options.parse(new String[]{"--evaluator=" + kind.name().toLowerCase()}).createEvaluator();
+
+        return budget.evaluate(evaluator, evaluator.prepare(compile(code)));
+    }
+
+    private static Expression compile(String code) {
+        var symbolTable = new SymbolTable();
+        var globals = Builtins.initialEnv(symbolTable);
+        var error = new Error(code, "test");
+
+        var ast = Prelude.readPrelude(symbolTable).merge(Main.process(symbolTable, error, new Lexer(code)));
+
+        return Main.compile(ast, symbolTable, globals, error).program();
+    }
+}
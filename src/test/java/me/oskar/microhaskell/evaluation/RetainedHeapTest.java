@@ -0,0 +1,65 @@
+package me.oskar.microhaskell.evaluation;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Runs the retained-heap examples in a JVM with a heap far smaller than their evaluated lists, so an evaluator that
+ * keeps the cells alive that a list function has passed runs out of memory.
+ */
+class RetainedHeapTest {
+
+    private static final String MAX_HEAP = "-Xmx32m";
+    private static final long TIMEOUT_SECONDS = 120;
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void listFunctionsRunInConstantSpace(Options.EvaluatorKind evaluator) throws Exception {
+        assertEquals("6000000", run(Path.of("examples", "constant_space.mhs"), evaluator));
+    }
+
+    // The other evaluators keep the environments of running functions or thunks alive, see the example
+    @ParameterizedTest
+    @EnumSource(value = Options.EvaluatorKind.class, names = "GRAPH")
+    void selectionsDoNotRetainTheirList(Options.EvaluatorKind evaluator) throws Exception {
+        assertEquals("2", run(Path.of("examples", "selector_space.mhs"), evaluator));
+    }
+
+    /**
+     * Runs the program in a new JVM and returns the last line it printed, which is the value of the program.
+     */
+    private static String run(Path program, Options.EvaluatorKind evaluator) throws IOException, InterruptedException {
+        var java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        var output = Files.createTempFile("retained-heap", ".out");
+        try {
+            var process = new ProcessBuilder(java, MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+                    Main.class.getName(), "--evaluator=" + evaluator.name().toLowerCase(), program.toString())
+                    .redirectErrorStream(true)
+                    .redirectOutput(output.toFile())
+                    .start();
+
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                fail("Timed out after %d seconds".formatted(TIMEOUT_SECONDS));
+            }
+
+            var printed = Files.readString(output);
+            assertEquals(0, process.exitValue(), printed);
+
+            var lines = printed.strip().split("\n");
+            return lines[lines.length - 1];
+        } finally {
+            Files.delete(output);
+        }
+    }
+}
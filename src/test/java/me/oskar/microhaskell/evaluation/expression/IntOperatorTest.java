@@ -0,0 +1,135 @@
+package me.oskar.microhaskell.evaluation.expression;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.error.Error;
+import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.lexer.Lexer;
+import me.oskar.microhaskell.prelude.Prelude;
+import me.oskar.microhaskell.table.SymbolTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the integer builtins leave longs exactly at the boundary and come back to them once a result fits again,
+ * and that a division by zero fails on both representations.
+ */
+class IntOperatorTest {
+
+    private static final String MIN = "(0 - 9223372036854775807 - 1)";
+    private static final String MAX_PLUS_ONE = "(9223372036854775807 + 1)";
+
+    @ParameterizedTest
+    @CsvSource({
+            "+, 9223372036854775806, 1, 9223372036854775807",
+            "+, 9223372036854775807, 1, 9223372036854775808",
+            "+, -9223372036854775808, -1, -9223372036854775809",
+            "-, -9223372036854775807, 1, -9223372036854775808",
+            "-, -9223372036854775808, 1, -9223372036854775809",
+            "-, 9223372036854775807, -1, 9223372036854775808",
+            "*, 4611686018427387904, -2, -9223372036854775808",
+            "*, 4611686018427387904, 2, 9223372036854775808",
+            "*, -9223372036854775808, -1, 9223372036854775808",
+            "div, -9223372036854775808, -1, 9223372036854775808",
+    })
+    void leavesLongsExactlyAtTheBoundary(String operator, long left, long right, String expected) {
+        var result = operator(operator).apply(IntLiteral.of(left), IntLiteral.of(right));
+
+        assertEquals(new BigInteger(expected), toBigInteger(result));
+        assertEquals(fitsIntoLong(expected) ? IntLiteral.class : BigIntLiteral.class, result.getClass());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "+, 9223372036854775807, 1, 9223372036854775808",
+            "-, -9223372036854775808, 1, -9223372036854775809",
+            "*, -9223372036854775808, -1, 9223372036854775808",
+    })
+    void overflowOnLongsCarriesTheExactValue(String operator, long left, long right, String expected) {
+        var overflow = assertThrows(IntegerOverflow.class, () -> operator(operator).applyAsLong(left, right));
+
+        assertEquals(new BigInteger(expected), overflow.getValue().value());
+    }
+
+    @Test
+    void resultsThatFitAgainAreLongs() {
+        var big = operator("+").apply(IntLiteral.of(Long.MAX_VALUE), IntLiteral.of(1));
+
+        assertEquals(IntLiteral.of(Long.MAX_VALUE), operator("-").apply(big, IntLiteral.of(1)));
+        assertEquals(IntLiteral.of(Long.MIN_VALUE), operator("*").apply(big, IntLiteral.of(-1)));
+    }
+
+    @Test
+    void divisionByZeroFailsOnLongs() {
+        var div = operator("div");
+
+        assertEquals("/ by zero", assertThrows(ArithmeticException.class,
+                () -> div.apply(IntLiteral.of(Long.MAX_VALUE), IntLiteral.of(0))).getMessage());
+        assertEquals("/ by zero", assertThrows(ArithmeticException.class,
+                () -> div.applyAsLong(Long.MIN_VALUE, 0)).getMessage());
+    }
+
+    @Test
+    void divisionByZeroFailsOnBigIntegers() {
+        var big = operator("+").apply(IntLiteral.of(Long.MAX_VALUE), IntLiteral.of(1));
+
+        assertEquals("/ by zero", assertThrows(ArithmeticException.class,
+                () -> operator("div").apply(big, IntLiteral.of(0))).getMessage());
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void negateLeavesLongsAtTheMinimum(Options.EvaluatorKind kind) {
+        assertEquals("-9223372036854775807", evaluate("main = negate 9223372036854775807;", kind));
+        assertEquals("9223372036854775808", evaluate("main = negate %s;".formatted(MIN), kind));
+        assertEquals("-9223372036854775808", evaluate("main = negate %s;".formatted(MAX_PLUS_ONE), kind));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void modByZeroFails(Options.EvaluatorKind kind) {
+        for (var dividend : new String[]{"5", MIN, MAX_PLUS_ONE}) {
+            var e = assertThrows(ArithmeticException.class,
+                    () -> evaluate("main = %s `mod` 0;".formatted(dividend), kind));
+            assertEquals("/ by zero", e.getMessage());
+        }
+    }
+
+    private static IntOperator operator(String name) {
+        var globals = Builtins.initialEnv(new SymbolTable());
+
+        return ((BuiltinFunction) globals.get(name)).getIntOperator();
+    }
+
+    private static String evaluate(String code, Options.EvaluatorKind kind) {
+        var symbolTable = new SymbolTable();
+        var globals = Builtins.initialEnv(symbolTable);
+        var error = new Error(code, "test");
+
+        var ast = Prelude.readPrelude(symbolTable).merge(Main.process(symbolTable, error, new Lexer(code)));
+        var ir = Main.compile(ast, symbolTable, globals, error).program();
+
+        var evaluator = Options.parse(new String[]{"--evaluator=" + kind.name().toLowerCase()}).createEvaluator();
+
+        return evaluator.evaluate(evaluator.prepare(ir)).toString();
+    }
+
+    private static BigInteger toBigInteger(Expression value) {
+        return switch (value) {
+            case IntLiteral(long v) -> BigInteger.valueOf(v);
+            case BigIntLiteral(BigInteger v) -> v;
+            default -> throw new AssertionError(value);
+        };
+    }
+
+    private static boolean fitsIntoLong(String value) {
+        return new BigInteger(value).bitLength() < Long.SIZE;
+    }
+}
@@ -0,0 +1,135 @@
+package me.oskar.microhaskell.ir;
+
+import me.oskar.microhaskell.Main;
+import me.oskar.microhaskell.Options;
+import me.oskar.microhaskell.error.Error;
+import me.oskar.microhaskell.evaluation.Builtins;
+import me.oskar.microhaskell.evaluation.expression.*;
+import me.oskar.microhaskell.lexer.Lexer;
+import me.oskar.microhaskell.table.SymbolTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Compiles small programs without inlining or simplification, so every call of a top-level function is still a
+ * {@link Call} of that function, and checks which of its arguments the analyzer made strict.
+ */
+class StrictnessAnalyzerTest {
+
+    private static final String PICK = """
+            undefined = 1 `div` 0;
+            pick b x = if b then x else 0;
+            main = pick 0 undefined;
+            """;
+
+    private static final String CONST = """
+            undefined = 1 `div` 0;
+            const x y = x;
+            main = const 5 undefined;
+            """;
+
+    // isEven only forces acc if isOdd does, so it stays strict in acc if the iteration stops while assuming isOdd is
+    private static final String EVEN_ODD = """
+            undefined = 1 `div` 0;
+            isEven n acc = if n == 0 then acc else isOdd (n - 1) acc;
+            isOdd n acc = if n == 0 then 0 else isEven (n - 1) acc;
+            main = isEven 11 undefined;
+            """;
+
+    @Test
+    void argumentUsedInOneBranchStaysLazy() {
+        var calls = callsOf(compile(PICK), "pick");
+
+        assertFalse(calls.isEmpty());
+        calls.forEach(call -> assertArrayEquals(new boolean[]{true, false}, call.getStrictness()));
+    }
+
+    @Test
+    void ignoredArgumentStaysLazy() {
+        var calls = callsOf(compile(CONST), "const");
+
+        assertFalse(calls.isEmpty());
+        calls.forEach(call -> assertArrayEquals(new boolean[]{true, false}, call.getStrictness()));
+    }
+
+    @Test
+    void mutuallyRecursiveGroupReachesFixpoint() {
+        var ir = compile(EVEN_ODD);
+        var calls = new ArrayList<Call>();
+        calls.addAll(callsOf(ir, "isEven"));
+        calls.addAll(callsOf(ir, "isOdd"));
+
+        // The call in main and the call in each member
+        assertEquals(3, calls.size());
+        calls.forEach(call -> assertArrayEquals(new boolean[]{true, false}, call.getStrictness()));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Options.EvaluatorKind.class)
+    void lazyArgumentsAreNotEvaluated(Options.EvaluatorKind kind) {
+        assertEquals("0", evaluate(PICK, kind));
+        assertEquals("5", evaluate(CONST, kind));
+        assertEquals("0", evaluate(EVEN_ODD, kind));
+    }
+
+    private static Expression compile(String code) {
+        var symbolTable = new SymbolTable();
+        var globals = Builtins.initialEnv(symbolTable);
+        var error = new Error(code, "test");
+
+        var ast = Main.process(symbolTable, error, new Lexer(code));
+
+        return Main.compile(ast, symbolTable, globals, 0, 0, error).program();
+    }
+
+    private static String evaluate(String code, Options.EvaluatorKind kind) {
+        var evaluator = Options.parse(new String[]{"--evaluator=" + kind.name().toLowerCase()}).createEvaluator();
+
+        return evaluator.evaluate(evaluator.prepare(compile(code))).toString();
+    }
+
+    private static List<Call> callsOf(Expression expression, String name) {
+        var calls = new ArrayList<Call>();
+        collectCalls(expression, name, calls);
+
+        return calls;
+    }
+
+    private static void collectCalls(Expression expression, String name, List<Call> calls) {
+        switch (expression) {
+            case Lambda(String ignored, Expression body, int[] captures) -> collectCalls(body, name, calls);
+            case Application(Expression function, Expression argument) -> {
+                collectCalls(function, name, calls);
+                collectCalls(argument, name, calls);
+            }
+            case Call call -> {
+                if (call.getFunction() instanceof LocalVariable(String function, int slot) && function.equals(name)) {
+                    calls.add(call);
+                }
+
+                collectCalls(call.getFunction(), name, calls);
+                for (var argument : call.getArguments()) {
+                    collectCalls(argument, name, calls);
+                }
+            }
+            case RecursiveBinding(String ignored, Expression body, int[] captures) -> collectCalls(body, name, calls);
+            case RecursiveGroup(RecursiveBinding[] members, int selected, int[] captures) -> {
+                for (var member : members) {
+                    collectCalls(member, name, calls);
+                }
+            }
+            case Loop(Expression body) -> collectCalls(body, name, calls);
+            case SelfTailCall tailCall -> collectCalls(tailCall.call(), name, calls);
+            default -> {
+            }
+        }
+    }
+}